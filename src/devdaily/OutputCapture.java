@@ -0,0 +1,172 @@
+package devdaily;
+
+import java.nio.charset.Charset;
+
+/**
+ * Keeps the output of a stream as raw bytes, within a fixed limit.
+ *
+ * Up to half of the limit is kept from the start of the output (the head), the other half
+ * holds the most recent output (the tail) in a ring buffer. So a command that writes a lot keeps
+ * both how it started and how it ended, while what is in between is dropped and replaced by a
+ * marker. Memory use never exceeds the limit, however much output there is.
+ *
+ * Bytes are only decoded to text by toString(), so output that is never looked at is never decoded.
+ * The SDK tools write UTF-8, which is used instead of the platform default.
+ */
+public class OutputCapture
+{
+  /**
+   * Limit that keeps all output.
+   */
+  public static final int UNLIMITED = -1;
+
+  /**
+   * Character set in which output is decoded.
+   */
+  public static final Charset CHARSET = Charset.forName("UTF-8");
+
+  private static final byte[] NO_BYTES = new byte[0];
+
+  private final int headLimit;
+  private final int tailLimit;
+
+  private byte[] head = NO_BYTES;
+  private int headLength = 0;
+  private byte[] tail = null;
+  private long tailWritten = 0;
+  private byte[] compacted = null;
+
+  /**
+   * @param limit Maximum number of bytes to keep, 0 to keep nothing, or UNLIMITED to keep everything.
+   */
+  public OutputCapture(int limit)
+  {
+    if (limit == UNLIMITED)
+    {
+      this.headLimit = Integer.MAX_VALUE;
+      this.tailLimit = 0;
+    }
+    else
+    {
+      this.headLimit = Math.max(0, limit) - Math.max(0, limit) / 2;
+      this.tailLimit = Math.max(0, limit) / 2;
+    }
+  }
+
+  /**
+   * Adds bytes to the output.
+   */
+  public synchronized void write(byte[] bytes, int offset, int length)
+  {
+    compacted = null;
+
+    // fill the head first, growing it by doubling
+    int count = Math.min(length, headLimit - headLength);
+    if (count > 0)
+    {
+      if (headLength + count > head.length)
+      {
+        long wanted = Math.max(256, Math.max(head.length * 2L, (long) headLength + count));
+        byte[] grown = new byte[(int) Math.min(wanted, headLimit)];
+        System.arraycopy(head, 0, grown, 0, headLength);
+        head = grown;
+      }
+      System.arraycopy(bytes, offset, head, headLength, count);
+      headLength += count;
+      offset += count;
+      length -= count;
+    }
+    if (length <= 0)
+    {
+      return;
+    }
+
+    // the rest goes round the tail ring, overwriting the oldest bytes
+    if (tailLimit == 0)
+    {
+      tailWritten += length;
+      return;
+    }
+    if (tail == null)
+    {
+      tail = new byte[tailLimit];
+    }
+    if (length > tailLimit)
+    {
+      // only the last part can be kept anyway
+      tailWritten += length - tailLimit;
+      offset += length - tailLimit;
+      length = tailLimit;
+    }
+    int position = (int) (tailWritten % tailLimit);
+    int first = Math.min(length, tailLimit - position);
+    System.arraycopy(bytes, offset, tail, position, first);
+    System.arraycopy(bytes, offset + first, tail, 0, length - first);
+    tailWritten += length;
+  }
+
+  /**
+   * Get the kept output as one array: the head, a marker if output was dropped, and the tail.
+   * The array is shared and must not be changed; only the first getLength() bytes are valid.
+   */
+  public synchronized byte[] getBytes()
+  {
+    // nothing dropped, or nothing to keep at all
+    if (tailWritten == 0 || headLimit == 0)
+    {
+      return head;
+    }
+    if (compacted == null)
+    {
+      int tailLength = (int) Math.min(tailWritten, tailLimit);
+      byte[] marker = getDroppedBytes() > 0
+        ? ("\n[... " + getDroppedBytes() + " bytes of output left out ...]\n").getBytes()
+        : NO_BYTES;
+
+      compacted = new byte[headLength + marker.length + tailLength];
+      System.arraycopy(head, 0, compacted, 0, headLength);
+      System.arraycopy(marker, 0, compacted, headLength, marker.length);
+      if (tailLength > 0)
+      {
+        // the oldest byte of the tail is at the write position once the ring is full
+        int start = (int) (tailWritten > tailLimit ? tailWritten % tailLimit : 0);
+        int first = tailLength - start;
+        System.arraycopy(tail, start, compacted, headLength + marker.length, first);
+        System.arraycopy(tail, 0, compacted, headLength + marker.length + first, start);
+      }
+    }
+    return compacted;
+  }
+
+  /**
+   * Get the number of valid bytes in getBytes().
+   */
+  public synchronized int getLength()
+  {
+    return (tailWritten == 0 || headLimit == 0) ? headLength : getBytes().length;
+  }
+
+  /**
+   * Get the number of bytes that were dropped to stay within the limit.
+   */
+  public synchronized long getDroppedBytes()
+  {
+    return tailWritten - Math.min(tailWritten, tailLimit);
+  }
+
+  /**
+   * Returns true if output was dropped to stay within the limit.
+   */
+  public boolean isTruncated()
+  {
+    return getDroppedBytes() > 0;
+  }
+
+  /**
+   * Get the kept output decoded as text.
+   */
+  public String toString()
+  {
+    return new String(getBytes(), 0, getLength(), CHARSET);
+  }
+}
@@ -0,0 +1,23 @@
+package devdaily;
+
+/**
+ * Receives the output of a command line by line, while the command is still running.
+ * 
+ * Lines are delivered one at a time, in the order they were written, on a delivery thread of
+ * their own rather than on the thread that reads the stream. The standard output and error of
+ * a command are delivered independently, so a listener used for both may be called from two
+ * threads at once.
+ * A listener that takes its time only holds up its own stream: once too many lines are waiting,
+ * that stream is no longer read, which in turn makes the command wait once the pipe to this
+ * process is full. This way a slow consumer is never flooded with output, and the output of
+ * other commands keeps flowing.
+ */
+public interface OutputLineListener
+{
+  /**
+   * Called for each line of output, without the line terminator.
+   * 
+   * @param line The line that was read.
+   */
+  public void outputLine(String line);
+}
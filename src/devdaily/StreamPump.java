@@ -0,0 +1,229 @@
+package devdaily;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single background thread that reads the output streams of all running commands.
+ *
+ * Process streams cannot be used with a selector, so the pump polls them instead: it reads
+ * whatever bytes are available without blocking, and sleeps a little when none of the streams
+ * had anything to offer. A stream is done once its process has exited and no bytes are left.
+ * This way any number of commands share one thread, rather than two new threads per command.
+ *
+ * The thread is started when the first stream is registered and stops itself after a while
+ * without streams, so an idle application has no pump thread at all.
+ *
+ * As the pump never blocks on a stream, a handler can also be stopped at any moment: it lets go
+ * of its stream on the next poll, rather than once the process writes another line.
+ *
+ * The pause between polls grows to half a second while all streams are quiet, so a long-running
+ * command such as palm-log -f costs a couple of wake-ups per second rather than fifty. A command
+ * that exits wakes the pump up, so its last output is not kept waiting for the pause to end.
+ *
+ * Lines are not passed to listeners on the pump thread. Each handler hands its lines to a
+ * delivery thread, see ThreadedStreamHandler, so a slow listener never holds up the output of
+ * other commands.
+ */
+public class StreamPump implements Runnable
+{
+  private static final StreamPump instance = new StreamPump();
+
+  /** Shortest and longest pause between polls in milliseconds; the pause grows while streams are quiet. */
+  private static final long MIN_PAUSE = 2;
+  private static final long MAX_PAUSE = 500;
+
+  /** Time without streams after which the pump thread stops. */
+  private static final long IDLE_STOP = 5000;
+
+  private final ConcurrentLinkedQueue<ThreadedStreamHandler> added = new ConcurrentLinkedQueue<ThreadedStreamHandler>();
+  private final List<ThreadedStreamHandler> handlers = new ArrayList<ThreadedStreamHandler>();
+  private final byte[] buffer = new byte[8192];
+  private Thread thread = null;
+
+  /** Threads that pass lines on to listeners; one per stream with lines waiting, none when idle. */
+  private final ThreadPoolExecutor deliverers = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+    IDLE_STOP, TimeUnit.MILLISECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory()
+    {
+      public Thread newThread(Runnable r)
+      {
+        Thread t = new Thread(r, "StreamPump-Delivery");
+        t.setDaemon(true);
+        return t;
+      }
+    });
+
+  private StreamPump()
+  {
+  }
+
+  /**
+   * Get the shared pump.
+   */
+  public static StreamPump getInstance()
+  {
+    return instance;
+  }
+
+  /**
+   * Starts reading the stream of a handler. The handler is informed of the data it reads
+   * and once its stream is done.
+   */
+  public void register(ThreadedStreamHandler handler)
+  {
+    added.offer(handler);
+    synchronized (this)
+    {
+      if (thread == null)
+      {
+        thread = new Thread(this, "StreamPump");
+        thread.setDaemon(true);
+        thread.start();
+      }
+      // wake up a pump that is pausing
+      notifyAll();
+    }
+  }
+
+  /**
+   * Wakes up a pump that is pausing, so a change (such as a stopped handler) is handled right away.
+   */
+  synchronized void wakeUp()
+  {
+    notifyAll();
+  }
+
+  /**
+   * Runs the delivery of lines to a listener on a thread of its own, so the pump does not wait for it.
+   */
+  void deliver(Runnable delivery)
+  {
+    deliverers.execute(delivery);
+  }
+
+  public void run()
+  {
+    long pause = MIN_PAUSE;
+    long idleSince = System.currentTimeMillis();
+
+    while (true)
+    {
+      // take over newly registered streams
+      ThreadedStreamHandler h;
+      while ((h = added.poll()) != null)
+      {
+        handlers.add(h);
+      }
+
+      boolean readAny = false;
+      for (int i = handlers.size() - 1; i >= 0; i--)
+      {
+        ThreadedStreamHandler handler = handlers.get(i);
+        int result = pump(handler);
+        if (result > 0)
+        {
+          readAny = true;
+        }
+        else if (result < 0)
+        {
+          handlers.remove(i);
+          handler.finish();
+        }
+      }
+
+      // pause, shorter when there was output, as more is likely to follow
+      pause = readAny ? MIN_PAUSE : Math.min(MAX_PAUSE, pause * 2);
+      synchronized (this)
+      {
+        if (handlers.isEmpty() && added.isEmpty())
+        {
+          if (System.currentTimeMillis() - idleSince > IDLE_STOP)
+          {
+            // nothing to do for a while, a new thread is started on the next registration
+            thread = null;
+            return;
+          }
+        }
+        else
+        {
+          idleSince = System.currentTimeMillis();
+        }
+
+        try
+        {
+          if (added.isEmpty())
+          {
+            wait(handlers.isEmpty() ? IDLE_STOP : pause);
+          }
+        }
+        catch (InterruptedException e)
+        {
+          // keep pumping, streams would otherwise never be finished
+        }
+      }
+    }
+  }
+
+  /**
+   * Reads what is available from one stream.
+   * @return Number of bytes read, or -1 if the stream is done.
+   */
+  private int pump(ThreadedStreamHandler handler)
+  {
+    // a stopped handler lets go of its stream right away, whatever is still in the pipe
+    if (handler.isStopped())
+    {
+      return -1;
+    }
+
+    // leave the stream alone while its listener catches up, the command waits once the pipe is full
+    if (handler.isBacklogged())
+    {
+      return 0;
+    }
+
+    InputStream in = handler.getInputStream();
+    try
+    {
+      // check the process first: once it has exited, whatever is in the pipe is all there is
+      boolean processFinished = handler.isProcessFinished();
+      int available = in.available();
+      if (available > 0)
+      {
+        int n = in.read(buffer, 0, Math.min(available, buffer.length));
+        if (n < 0)
+        {
+          return -1;
+        }
+        handler.consume(buffer, 0, n);
+        return n;
+      }
+
+      // nothing left in the pipe and nothing more to come
+      // (output of child processes that outlive the command is not waited for)
+      if (processFinished)
+      {
+        return -1;
+      }
+      return 0;
+    }
+    catch (IOException e)
+    {
+      // stream closed
+      return -1;
+    }
+    catch (RuntimeException e)
+    {
+      // a failing handler must not stop the pump for all other streams
+      e.printStackTrace();
+      return -1;
+    }
+  }
+}
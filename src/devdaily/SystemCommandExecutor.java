@@ -38,6 +38,10 @@ public class SystemCommandExecutor
   private String adminPassword;
   private ThreadedStreamHandler inputStreamHandler;
   private ThreadedStreamHandler errorStreamHandler;
+  private volatile Process process;
+  private OutputLineListener standardOutputListener;
+  private OutputLineListener standardErrorListener;
+  private int retainLimit = ThreadedStreamHandler.UNLIMITED;
   
   /**
    * Pass in the system command you want to run as a List of Strings, as shown here:
@@ -67,57 +71,129 @@ public class SystemCommandExecutor
   public int executeCommand()
   throws IOException, InterruptedException
   {
-    int exitValue = -99;
+    startCommand();
+    return waitForCommand();
+  }
 
-    try
-    {
-      ProcessBuilder pb = new ProcessBuilder(commandInformation);
-      Process process = pb.start();
-
-      // you need this if you're going to write something to the command's input stream
-      // (such as when invoking the 'sudo' command, and it prompts you for a password).
-      OutputStream stdOutput = process.getOutputStream();
-      
-      // i'm currently doing these on a separate line here in case i need to set them to null
-      // to get the threads to stop.
-      // see http://java.sun.com/j2se/1.5.0/docs/guide/misc/threadPrimitiveDeprecation.html
-      InputStream inputStream = process.getInputStream();
-      InputStream errorStream = process.getErrorStream();
-
-      // these need to run as java threads to get the standard output and error from the command.
-      // the inputstream handler gets a reference to our stdOutput in case we need to write
-      // something to it, such as with the sudo command
-      inputStreamHandler = new ThreadedStreamHandler(inputStream, stdOutput, adminPassword);
-      errorStreamHandler = new ThreadedStreamHandler(errorStream);
-
-      // TODO the inputStreamHandler has a nasty side-effect of hanging if the given password is wrong; fix it
-      inputStreamHandler.start();
-      errorStreamHandler.start();
-
-      // TODO a better way to do this?
-      exitValue = process.waitFor();
- 
-      // TODO a better way to do this?
-      inputStreamHandler.interrupt();
-      errorStreamHandler.interrupt();
-      inputStreamHandler.join();
-      errorStreamHandler.join();
-    }
-    catch (IOException e)
-    {
-      // TODO deal with this here, or just throw it?
-      throw e;
-    }
-    catch (InterruptedException e)
+  /**
+   * Starts the command and its stream handlers, but does not wait for it to finish.
+   * This allows a caller to get hold of the running process (e.g. to destroy it)
+   * before calling waitForCommand().
+   */
+  public void startCommand()
+  throws IOException
+  {
+    ProcessBuilder pb = new ProcessBuilder(commandInformation);
+    process = pb.start();
+
+    // you need this if you're going to write something to the command's input stream
+    // (such as when invoking the 'sudo' command, and it prompts you for a password).
+    OutputStream stdOutput = process.getOutputStream();
+    
+    // i'm currently doing these on a separate line here in case i need to set them to null
+    // to get the threads to stop.
+    // see http://java.sun.com/j2se/1.5.0/docs/guide/misc/threadPrimitiveDeprecation.html
+    InputStream inputStream = process.getInputStream();
+    InputStream errorStream = process.getErrorStream();
+
+    // the standard output and error from the command are read by the shared stream pump,
+    // rather than by two new threads per command.
+    // the inputstream handler gets a reference to our stdOutput in case we need to write
+    // something to it, such as with the sudo command
+    if (adminPassword != null)
     {
-      // generated by process.waitFor() call
-      // TODO deal with this here, or just throw it?
-      throw e;
+      inputStreamHandler = new ThreadedStreamHandler(inputStream, process, stdOutput, adminPassword);
     }
-    finally
+    else
     {
-      return exitValue;
+      inputStreamHandler = new ThreadedStreamHandler(inputStream, process);
     }
+    errorStreamHandler = new ThreadedStreamHandler(errorStream, process);
+
+    // pass output on while the command runs, and keep only as much as requested
+    inputStreamHandler.setOutputLineListener(standardOutputListener);
+    errorStreamHandler.setOutputLineListener(standardErrorListener);
+    inputStreamHandler.setRetainLimit(retainLimit);
+    errorStreamHandler.setRetainLimit(retainLimit);
+
+    // TODO the inputStreamHandler has a nasty side-effect of hanging if the given password is wrong; fix it
+    inputStreamHandler.start();
+    errorStreamHandler.start();
+  }
+
+  /**
+   * Waits for a command started with startCommand() to finish.
+   * @return The exit value of the command.
+   */
+  public int waitForCommand()
+  throws InterruptedException
+  {
+    // generated by process.waitFor() call
+    // TODO a better way to do this?
+    int exitValue = process.waitFor();
+
+    // the pump pauses longer while a command is quiet, have it read the rest now
+    StreamPump.getInstance().wakeUp();
+
+    // wait until all output has been read
+    inputStreamHandler.join();
+    errorStreamHandler.join();
+
+    return exitValue;
+  }
+
+  /**
+   * Set a listener that receives each line of standard output (stdout) while the command runs.
+   * Must be called before the command is started.
+   */
+  public void setStandardOutputListener(OutputLineListener listener)
+  {
+    this.standardOutputListener = listener;
+  }
+
+  /**
+   * Set a listener that receives each line of standard error (stderr) while the command runs.
+   * Must be called before the command is started.
+   */
+  public void setStandardErrorListener(OutputLineListener listener)
+  {
+    this.standardErrorListener = listener;
+  }
+
+  /**
+   * Limit the number of bytes kept per stream for getStandardOutputFromCommand() and
+   * getStandardErrorFromCommand(). Output beyond the limit is still passed to the listeners.
+   * Must be called before the command is started.
+   * 
+   * @param retainLimit Maximum number of bytes, 0 to keep nothing, or ThreadedStreamHandler.UNLIMITED.
+   */
+  public void setRetainLimit(int retainLimit)
+  {
+    this.retainLimit = retainLimit;
+  }
+
+  /**
+   * Get the total number of bytes the command wrote to stdout and stderr, including output that was not retained.
+   */
+  public long getOutputLength()
+  {
+    return inputStreamHandler.getOutputLength() + errorStreamHandler.getOutputLength();
+  }
+
+  /**
+   * Returns true if any output was dropped because of the retain limit.
+   */
+  public boolean isOutputTruncated()
+  {
+    return inputStreamHandler.isTruncated() || errorStreamHandler.isTruncated();
+  }
+
+  /**
+   * Get the process of the command that was started, or null if it has not been started yet.
+   */
+  public Process getProcess()
+  {
+    return process;
   }
 
   /**
@@ -136,6 +212,22 @@ public class SystemCommandExecutor
     return errorStreamHandler.getOutputBuffer();
   }
 
+  /**
+   * Get the handler of standard output (stdout), e.g. to use its retained bytes without decoding them.
+   */
+  public ThreadedStreamHandler getStandardOutputHandler()
+  {
+    return inputStreamHandler;
+  }
+
+  /**
+   * Get the handler of standard error (stderr).
+   */
+  public ThreadedStreamHandler getStandardErrorHandler()
+  {
+    return errorStreamHandler;
+  }
+
 
 }
 
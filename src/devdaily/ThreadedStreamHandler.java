@@ -1,6 +1,7 @@
 package devdaily;
 
 import java.io.*;
+import java.util.LinkedList;
 
 /**
  * This class is intended to be used with the SystemCommandExecutor
@@ -35,15 +36,57 @@ import java.io.*;
  * Please ee the following page for the LGPL license:
  * http://www.gnu.org/licenses/lgpl.txt
  * 
+ * Output can be passed on line by line to an OutputLineListener while the command runs.
+ * The output itself is retained as raw bytes in an OutputCapture, so it is only decoded to text
+ * when someone asks for it. The number of bytes retained can be limited, in which case the first
+ * and the last part of the output are kept.
+ * 
+ * Despite its name this handler no longer runs its own thread: the shared StreamPump reads
+ * the stream and hands the bytes to consume(). Callers use start() and join() as before.
+ * 
+ * Lines for the listener are queued and passed on by a delivery thread, so the pump never waits
+ * for a listener. Once more than MAX_BACKLOG characters are waiting, the pump stops reading this
+ * stream until the listener catches up; the command then waits once its pipe is full.
+ * 
  */
-public class ThreadedStreamHandler extends Thread
+public class ThreadedStreamHandler
 {
+  /**
+   * Retain limit that keeps all output.
+   */
+  public static final int UNLIMITED = OutputCapture.UNLIMITED;
+
+  /**
+   * Number of characters of lines waiting for the listener at which reading pauses.
+   */
+  public static final int MAX_BACKLOG = 64 * 1024;
+
   InputStream inputStream;
+  Process process;
   String adminPassword;
   OutputStream outputStream;
   PrintWriter printWriter;
-  StringBuilder outputBuffer = new StringBuilder();
+  private OutputCapture capture = null;
   private boolean sudoIsRequested = false;
+  private OutputLineListener listener = null;
+  private int retainLimit = UNLIMITED;
+  private volatile long outputLength = 0;
+  private ByteArrayOutputStream partialLine = new ByteArrayOutputStream();
+  private boolean finished = false;
+  private volatile boolean stopped = false;
+
+  // lines waiting for the listener, guarded by this
+  private final LinkedList<String> pendingLines = new LinkedList<String>();
+  private volatile int pendingLength = 0;
+  private boolean delivering = false;
+  private boolean streamDone = false;
+  private final Runnable delivery = new Runnable()
+  {
+    public void run()
+    {
+      deliverLines();
+    }
+  };
   
   /**
    * A simple constructor for when the sudo command is not necessary.
@@ -51,10 +94,12 @@ public class ThreadedStreamHandler extends Thread
    * running sudo before the command, and without expecting a password.
    * 
    * @param inputStream
+   * @param process The process the stream belongs to, used to find out when the stream is done.
    */
-  public ThreadedStreamHandler(InputStream inputStream)
+  public ThreadedStreamHandler(InputStream inputStream, Process process)
   {
     this.inputStream = inputStream;
+    this.process = process;
   }
 
   /**
@@ -64,78 +109,306 @@ public class ThreadedStreamHandler extends Thread
    * TODO this currently hangs if the admin password given for the sudo command is wrong.
    * 
    * @param inputStream
+   * @param process
    * @param outputStream
    * @param adminPassword
    */
-  public ThreadedStreamHandler(InputStream inputStream, OutputStream outputStream, String adminPassword)
+  public ThreadedStreamHandler(InputStream inputStream, Process process, OutputStream outputStream, String adminPassword)
   {
-    this.inputStream = inputStream;
+    this(inputStream, process);
     this.outputStream = outputStream;
     this.printWriter = new PrintWriter(outputStream);
     this.adminPassword = adminPassword;
     this.sudoIsRequested = true;
   }
   
-  public void run()
+  /**
+   * Starts reading the stream on the shared StreamPump.
+   */
+  public void start()
   {
     // on mac os x 10.5.x, when i run a 'sudo' command, i need to write
     // the admin password out immediately; that's why this code is
     // here.
     if (sudoIsRequested)
     {
-      //doSleep(500);
       printWriter.println(adminPassword);
       printWriter.flush();
     }
 
-    BufferedReader bufferedReader = null;
+    StreamPump.getInstance().register(this);
+  }
+
+  /**
+   * Waits until the stream is done and all output was handled.
+   */
+  public synchronized void join()
+  throws InterruptedException
+  {
+    while (!finished)
+    {
+      wait();
+    }
+  }
+
+  /**
+   * Stops reading the stream, without waiting for more output from the process. The pump lets go
+   * of the stream within a few milliseconds, after which join() returns once a line that is being
+   * passed to the listener is handled. Output that was not read or passed on by then is lost.
+   * The process itself is not stopped.
+   */
+  public void stop()
+  {
+    stopped = true;
+    StreamPump.getInstance().wakeUp();
+  }
+
+  /**
+   * Returns true if stop() was called.
+   */
+  boolean isStopped()
+  {
+    return stopped;
+  }
+
+  /**
+   * Returns true if the listener is so far behind that the stream should not be read for now.
+   */
+  boolean isBacklogged()
+  {
+    return pendingLength >= MAX_BACKLOG;
+  }
+
+  /**
+   * Called by the pump with bytes read from the stream. The bytes are retained as they are;
+   * only when there is a listener are they split into lines, and the last incomplete line is
+   * kept until it is complete.
+   */
+  void consume(byte[] bytes, int offset, int length)
+  {
+    outputLength += length;
+    getCapture().write(bytes, offset, length);
+    if (listener == null)
+    {
+      return;
+    }
+
+    int start = offset;
+    int end = offset + length;
+    for (int i = offset; i < end; i++)
+    {
+      if (bytes[i] == '\n')
+      {
+        partialLine.write(bytes, start, i - start);
+        handleLine();
+        start = i + 1;
+      }
+    }
+    partialLine.write(bytes, start, end - start);
+  }
+
+  /**
+   * Called by the pump once the stream is done.
+   */
+  void finish()
+  {
+    // the last line may lack a line terminator
+    if (listener != null && partialLine.size() > 0)
+    {
+      handleLine();
+    }
     try
     {
-      bufferedReader = new BufferedReader(new InputStreamReader(inputStream));
-      String line = null;
-      while ((line = bufferedReader.readLine()) != null)
+      inputStream.close();
+    }
+    catch (IOException e)
+    {
+      // ignore this one
+    }
+
+    synchronized (this)
+    {
+      // while lines are still being delivered, the delivery finishes the handler
+      streamDone = true;
+      if (!delivering)
       {
-        outputBuffer.append(line + "\n");
+        finished = true;
+        notifyAll();
       }
     }
-    catch (IOException ioe)
+  }
+
+  /**
+   * Get the stream this handler reads.
+   */
+  InputStream getInputStream()
+  {
+    return inputStream;
+  }
+
+  /**
+   * Returns true if the process that writes to the stream has exited.
+   */
+  boolean isProcessFinished()
+  {
+    try
+    {
+      process.exitValue();
+      return true;
+    }
+    catch (IllegalThreadStateException e)
+    {
+      return false;
+    }
+  }
+
+  /**
+   * Queues the line collected so far for the listener and starts a new one.
+   * A carriage return before the line feed is dropped, as readLine() did.
+   */
+  private void handleLine()
+  {
+    byte[] bytes = partialLine.toByteArray();
+    int length = bytes.length;
+    if (length > 0 && bytes[length - 1] == '\r')
     {
-      // TODO handle this better
-      ioe.printStackTrace();
+      length--;
     }
-    catch (Throwable t)
+    String line = new String(bytes, 0, length, OutputCapture.CHARSET);
+    partialLine.reset();
+
+    boolean startDelivery;
+    synchronized (this)
     {
-      // TODO handle this better
-      t.printStackTrace();
+      pendingLines.add(line);
+      pendingLength += line.length();
+      startDelivery = !delivering;
+      delivering = true;
     }
-    finally
+    if (startDelivery)
     {
+      StreamPump.getInstance().deliver(delivery);
+    }
+  }
+
+  /**
+   * Passes the queued lines on to the listener, in order, until none are left. Runs on a delivery
+   * thread, of which there is at most one per handler at a time.
+   */
+  private void deliverLines()
+  {
+    while (true)
+    {
+      String line;
+      boolean backlogged;
+      synchronized (this)
+      {
+        line = stopped ? null : pendingLines.poll();
+        if (line == null)
+        {
+          pendingLines.clear();
+          pendingLength = 0;
+          delivering = false;
+          if (streamDone)
+          {
+            finished = true;
+            notifyAll();
+          }
+          return;
+        }
+        backlogged = isBacklogged();
+        pendingLength -= line.length();
+      }
+
+      // the pump skipped this stream, have it read again now there is room
+      if (backlogged && !isBacklogged())
+      {
+        StreamPump.getInstance().wakeUp();
+      }
+
       try
       {
-        bufferedReader.close();
+        listener.outputLine(line);
       }
-      catch (IOException e)
+      catch (RuntimeException e)
       {
-        // ignore this one
+        // a failing listener must not keep the command from finishing
+        e.printStackTrace();
       }
     }
   }
-  
-  private void doSleep(long millis)
+
+  /**
+   * Get the capture that retains the output, created on first use as the retain limit must be known.
+   */
+  private synchronized OutputCapture getCapture()
   {
-    try
-    {
-      Thread.sleep(millis);
-    }
-    catch (InterruptedException e)
+    if (capture == null)
     {
-      // ignore
+      capture = new OutputCapture(retainLimit);
     }
+    return capture;
   }
-  
+
+  /**
+   * Get the retained output decoded as text. A new buffer is returned on each call.
+   */
   public StringBuilder getOutputBuffer()
   {
-    return outputBuffer;
+    return new StringBuilder( getCapture().toString() );
+  }
+
+  /**
+   * Get the retained output as raw bytes, see OutputCapture.getBytes(). Only the first getRetainedLength()
+   * bytes are valid, and the array must not be changed. Call only after the stream is done.
+   */
+  public byte[] getRetainedBytes()
+  {
+    return getCapture().getBytes();
+  }
+
+  /**
+   * Get the number of bytes of retained output.
+   */
+  public int getRetainedLength()
+  {
+    return getCapture().getLength();
+  }
+
+  /**
+   * Sets a listener that receives each line of output as soon as it is read.
+   * Must be called before the handler is started.
+   */
+  public void setOutputLineListener(OutputLineListener listener)
+  {
+    this.listener = listener;
+  }
+
+  /**
+   * Limits the number of bytes of output that are retained. Once there is more output, its first and
+   * last part are kept, see OutputCapture. Must be called before the handler is started.
+   * 
+   * @param retainLimit Maximum number of bytes, 0 to keep nothing, or UNLIMITED to keep everything.
+   */
+  public void setRetainLimit(int retainLimit)
+  {
+    this.retainLimit = retainLimit;
+  }
+
+  /**
+   * Get the total number of bytes read, including output that was not retained.
+   */
+  public long getOutputLength()
+  {
+    return outputLength;
+  }
+
+  /**
+   * Returns true if output was dropped because of the retain limit.
+   */
+  public boolean isTruncated()
+  {
+    return getCapture().isTruncated();
   }
 
 }
\ No newline at end of file
@@ -4,10 +4,16 @@ package webosdevtool;
 
 import webosdevtool.help.DevtoolHelpWindow;
 import webosdevtool.process.FileOperator;
+import webosdevtool.process.ProcessSupervisor;
 import webosdevtool.process.Task;
+import webosdevtool.process.TaskFuture;
+import webosdevtool.process.TaskGroup;
 import webosdevtool.process.TaskManager;
+import webosdevtool.process.TaskTimelineFrame;
 import webosdevtool.jslint.LintFrame;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Vector;
 
 /**
@@ -50,6 +56,11 @@ public class Devtool {
 	 */
 	public LintFrame jslintWindow;
 	
+	/**
+	 * Reference to separate task timeline window
+	 */
+	public TaskTimelineFrame taskTimelineWindow;
+	
 	/**
 	 * Window frame used by this devtool instance
 	 */
@@ -123,7 +134,7 @@ public class Devtool {
 		// START GATHERING INFO ----------
 		
 		this.setLogState(true);
-		this.deviceRefreshList();
+		this.deviceRefreshList(Task.PRIORITY_BACKGROUND);
 	}
 	
 	// Methods ------------------------------------------------------------
@@ -414,8 +425,10 @@ public class Devtool {
 	
 	/**
 	 * Generate a project.
+	 *
+	 * @return Future that completes once the task is done, see <code>TaskFuture</code>.
 	 */
-	public void projectNew() {
+	public TaskFuture projectNew() {
 		System.out.println("\nNew project...");
 		// get a destination folder
 		String destinationFolder = devwindow.showFolderPickerDialog("Select Destination Folder");
@@ -435,20 +448,23 @@ public class Devtool {
 				args[1] = projectName;
 				
 				// create task with arguments
-				taskManager.addTask( new Task(Task.PROJECT_NEW, null, null, args) );
+				return taskManager.addTask( new Task(Task.PROJECT_NEW, null, null, args) ).getFuture();
 			}
 		}
+		return TaskFuture.none();
 	}
 	
 	/**
 	 * Generate a new scene for an existing project.
+	 *
+	 * @return Future that completes once the task is done, see <code>TaskFuture</code>.
 	 */
-	public void projectNewScene() {
+	public TaskFuture projectNewScene() {
 		System.out.println("\nNew scene...");
 
 		if (currentItem.isEnyoEnabled()) {
 			System.out.println("Project is based on Enyo, only Mojo projects can have scenes added.");
-			return;
+			return TaskFuture.none();
 		}
 		
 		// ask for project name
@@ -462,110 +478,200 @@ public class Devtool {
 			args[0] = sceneName;
 			
 			// create task with arguments
-			taskManager.addTask( new Task(Task.PROJECT_NEW_SCENE, currentItem, null, args) );
+			return taskManager.addTask( new Task(Task.PROJECT_NEW_SCENE, currentItem, null, args) ).getFuture();
 		}
+		return TaskFuture.none();
 	}
 
 	/**
-	 *
+	 * @return Future that completes once the task is done, see <code>TaskFuture</code>.
 	 */
-	public void projectDeploy() {
+	public TaskFuture projectDeploy() {
 		System.out.println("\nDeploying a project");
 		
-		taskManager.addTask( new Task(Task.PROJECT_DEPLOY, currentItem, null) );
+		return taskManager.addTask( new Task(Task.PROJECT_DEPLOY, currentItem, null) ).getFuture();
 	}
 	
 	/**
-	 *
+	 * @return Future that completes once the task is done, see <code>TaskFuture</code>.
 	 */
-	public void projectPackage() {
+	public TaskFuture projectPackage() {
 		System.out.println("\nPackaging a project");
 		
-		taskManager.addTask( new Task(Task.PROJECT_PACKAGE, currentItem, null) );
+		return taskManager.addTask( new Task(Task.PROJECT_PACKAGE, currentItem, null) ).getFuture();
 	}
 	
 	/**
-	 *
+	 * @return Future that completes once the task is done, see <code>TaskFuture</code>.
 	 */
-	public void projectInstall() {
+	public TaskFuture projectInstall() {
 		System.out.println("\nInstalling a project");
 		
-		taskManager.addTask( new Task(Task.PROJECT_INSTALL, currentItem, currentDevice) );
+		return taskManager.addTask( new Task(Task.PROJECT_INSTALL, currentItem, currentDevice) ).getFuture();
 	}
 	
 	/**
 	 * Launches a project's application on a device. The inspectable status is deprecated in webOS 2+.
 	 *
 	 * @param inspectable True if the project should be launched as inspectable, that is to be inspected with the Palm Inspector (deprecated for SDK versions 2+)
+	 *
+	 * @return Future that completes once the task is done, see <code>TaskFuture</code>.
 	 */
-	public void projectLaunch() {
+	public TaskFuture projectLaunch() {
 		System.out.println("\nRunning a project");
 		
-		taskManager.addTask( new Task(Task.PROJECT_LAUNCH, currentItem, currentDevice) );
+		return taskManager.addTask( new Task(Task.PROJECT_LAUNCH, currentItem, currentDevice) ).getFuture();
 	}
 	
 	/**
-	 *
+	 * @return Future that completes once the task is done, see <code>TaskFuture</code>.
 	 */
-	public void projectCloseOnDevice() {
+	public TaskFuture projectCloseOnDevice() {
 		System.out.println("\nClosing a project on device");
 		
-		taskManager.addTask( new Task(Task.PROJECT_CLOSE, currentItem, currentDevice) );
+		return taskManager.addTask( new Task(Task.PROJECT_CLOSE, currentItem, currentDevice) ).getFuture();
 	}
 	
 	/**
-	 *
+	 * @return Future that completes once the task is done, see <code>TaskFuture</code>.
 	 */
-	public void projectUninstall() {
+	public TaskFuture projectUninstall() {
 		System.out.println("\nUninstalling a project");
 		
-		taskManager.addTask( new Task(Task.PROJECT_UNINSTALL, currentItem, currentDevice) );
+		return taskManager.addTask( new Task(Task.PROJECT_UNINSTALL, currentItem, currentDevice) ).getFuture();
 	}
 	
 	/**
-	 * 
+	 * Deploys, packages, installs and launches a project on the current device.
+	 * Each step is a separate task which depends on the previous one, so a failing step
+	 * cancels the remaining steps while other tasks may run in between.
+	 *
+	 * @return Future that completes once the task is done, see <code>TaskFuture</code>.
 	 */
-	public void projectRun() {
+	public TaskFuture projectRun() {
 		System.out.println("\nRunning a project");
 		
-		taskManager.addTask( new Task(Task.PROJECT_RUN, currentItem, currentDevice) );
+		// build the graph: deploy -> package -> install -> launch
+		Task deploy = new Task(Task.PROJECT_DEPLOY, currentItem, null);
+		Task pack = new Task(Task.PROJECT_PACKAGE, currentItem, null);
+		pack.addPrerequisite(deploy);
+		Task install = new Task(Task.PROJECT_INSTALL, currentItem, currentDevice);
+		install.addPrerequisite(pack);
+		Task launch = new Task(Task.PROJECT_LAUNCH, currentItem, currentDevice);
+		launch.addPrerequisite(install);
+		
+		taskManager.addTask(deploy);
+		taskManager.addTask(pack);
+		taskManager.addTask(install);
+		taskManager.addTask(launch);
+		
+		// launch is skipped if any step before it fails, so it is done last in any case
+		return launch.getFuture();
 	}
 	
 	/**
+	 * Deploys and packages a project once, then installs and launches it on all available devices.
+	 * Installs to different devices run concurrently, and a single report lists the results per device.
+	 * An emulator that is not running is skipped.
 	 *
+	 * @return Futures of the launch tasks, one per device.
+	 */
+	public List<TaskFuture> projectRunOnAllDevices() {
+		System.out.println("\nRunning a project on all devices");
+		
+		TaskGroup group = new TaskGroup("Run on All Devices");
+		List<TaskFuture> launches = new ArrayList<TaskFuture>();
+		
+		// shared steps
+		Task deploy = group.add( new Task(Task.PROJECT_DEPLOY, currentItem, null) );
+		Task pack = group.add( new Task(Task.PROJECT_PACKAGE, currentItem, null) );
+		pack.addPrerequisite(deploy);
+		
+		// fan out, one install -> launch chain per device
+		String[] ids = getAvailableDeviceIDs();
+		for (int i = 0; i < ids.length; i++) {
+			// emulator is offline
+			if ( ids[i].equals("0") ) {
+				continue;
+			}
+			Device d = getDevice( ids[i] );
+			if (d == null) {
+				continue;
+			}
+			
+			Task install = group.add( new Task(Task.PROJECT_INSTALL, currentItem, d) );
+			install.addPrerequisite(pack);
+			Task launch = group.add( new Task(Task.PROJECT_LAUNCH, currentItem, d) );
+			launch.addPrerequisite(install);
+			launches.add( launch.getFuture() );
+		}
+		
+		// only add tasks once the group is complete
+		List<Task> tasks = group.getTasks();
+		for (int i = 0; i < tasks.size(); i++) {
+			taskManager.addTask( tasks.get(i) );
+		}
+		
+		return launches;
+	}
+	
+	/**
+	 * @return Future that completes once the task is done, see <code>TaskFuture</code>.
 	 */
-	public void projectOpenPalmLog() {
+	public TaskFuture projectOpenPalmLog() {
 		System.out.println("\nOpening palm-log window");
 		
-		taskManager.addTask( new Task(Task.PROJECT_OPEN_LOGGER, currentItem, currentDevice) );
+		return taskManager.addTask( new Task(Task.PROJECT_OPEN_LOGGER, currentItem, currentDevice) ).getFuture();
 	}
 	
 	/**
 	 * Method opens a new Finder window focused on the project folder.
+	 *
+	 * @return Future that completes once the task is done, see <code>TaskFuture</code>.
 	 */
-	public void projectRevealInFinder() {
+	public TaskFuture projectRevealInFinder() {
 		System.out.println("\nRevealing project in Finder");
 		
-		taskManager.addTask( new Task(Task.PROJECT_REVEAL, currentItem, null) );
+		return taskManager.addTask( new Task(Task.PROJECT_REVEAL, currentItem, null) ).getFuture();
 	}
 	
 	/**
-	 *
+	 * @return Future that completes once the task is done, see <code>TaskFuture</code>.
 	 */
-	public void projectJSLint() {
+	public TaskFuture projectJSLint() {
 		System.out.println("\nScanning a project with JSLint");
 		
-		taskManager.addTask( new Task(Task.PROJECT_JSLINT, currentItem, null) );
+		return taskManager.addTask( new Task(Task.PROJECT_JSLINT, currentItem, null) ).getFuture();
 	}
 	
 	/**
 	 * A Enyo app only method which tries to open the index.html file in /app_src/ root folder
 	 * in a webkit browser.
+	 *
+	 * @return Future that completes once the task is done, see <code>TaskFuture</code>.
 	 */
-	public void projectOpenInBrowser() {
+	public TaskFuture projectOpenInBrowser() {
 		System.out.println("\nOpening an Enyo project in browser");
 		
-		taskManager.addTask( new Task(Task.OPEN_PROJECT_IN_BROWSER, currentItem, null) );
+		return taskManager.addTask( new Task(Task.OPEN_PROJECT_IN_BROWSER, currentItem, null) ).getFuture();
+	}
+	
+	/**
+	 * Cancels all tasks for the currently selected project or device.
+	 * Running tasks have their command-line process destroyed, pending tasks are skipped.
+	 */
+	public void cancelTasks() {
+		// nothing selected
+		if (currentItem == null) {
+			return;
+		}
+		
+		System.out.println("\nCancelling tasks for " + currentItem.getName() );
+		
+		int cancelled = taskManager.cancelTasksForItem( currentItem );
+		if (cancelled == 0) {
+			System.out.println("No tasks to cancel.");
+		}
 	}
 	
 	// Enyo in browser methods ---------------------------------------------------
@@ -594,8 +700,10 @@ public class Devtool {
 	/**
 	 * Opens webkit browser of choice with the correct flags for Enyo simulation to work.
 	 * Or rather this method assigns this task to the TaskManager.
+	 *
+	 * @return Future that completes once the task is done, see <code>TaskFuture</code>.
 	 */
-	public void openWebkitBrowser() {
+	public TaskFuture openWebkitBrowser() {
 		System.out.println("\nOpening default webkit browser");
 		
 		// create arguments
@@ -603,7 +711,7 @@ public class Devtool {
 		args[0] = this.defaultWebkitBrowser;
 		
 		// create task with arguments
-		taskManager.addTask( new Task(Task.OPEN_WEBBROWSER, null, null, args) );
+		return taskManager.addTask( new Task(Task.OPEN_WEBBROWSER, null, null, args) ).getFuture();
 	}
 	
 	// Device methods --------------------------------------------
@@ -695,14 +803,14 @@ public class Devtool {
 				// add it to vector
 				devices.add( new Device(this, name, identifier, location) );
 				// get version and installed apps
-				this.deviceListApplications(identifier);
+				this.deviceListApplications(identifier, Task.PRIORITY_BACKGROUND);
 			} else {
 				// if available just update data
 				d.setID(identifier); // useful for emulators, no change for other devices
 				d.setLocation(location);
 				// get version and installed apps
 				this.deviceGetLogLevel(identifier);
-				this.deviceListApplications(identifier);
+				this.deviceListApplications(identifier, Task.PRIORITY_BACKGROUND);
 			}
 			
 			// if device was in view update to reflect any changes
@@ -814,19 +922,35 @@ public class Devtool {
 	/**
 	 * Method triggers a refresh / new scan of the currently available devices
 	 * for use in the software.
+	 *
+	 * @return Future that completes once the task is done, see <code>TaskFuture</code>.
 	 */
-	public void deviceRefreshList() {
+	public TaskFuture deviceRefreshList() {
+		return this.deviceRefreshList(Task.PRIORITY_INTERACTIVE);
+	}
+	
+	/**
+	 * Method triggers a refresh / new scan of the currently available devices.
+	 * @param priority Use <code>Task.PRIORITY_BACKGROUND</code> if the user did not ask for the scan.
+	 *
+	 * @return Future that completes once the task is done, see <code>TaskFuture</code>.
+	 */
+	public TaskFuture deviceRefreshList(int priority) {
 		System.out.println("\nRefreshing device list...");
 		
-		taskManager.addTask( new Task(Task.DEVICE_SCAN, null, null) );
+		Task scan = new Task(Task.DEVICE_SCAN, null, null);
+		scan.setPriority(priority);
+		return taskManager.addTask(scan).getFuture();
 	}
 	
 	/**
 	 * Method starts the device if it is a software device, such as the emulator.
 	 * @param identifier String value, if <code>null</code> it will use the default device,
 	 *			   if the String equals 'currentitem' it will use the currently selected item as its device.
+	 *
+	 * @return Future that completes once the task is done, see <code>TaskFuture</code>.
 	 */
-	public void deviceStart(String identifier) {
+	public TaskFuture deviceStart(String identifier) {
 		System.out.println("\nStarting a device");
 		
 		// getDevice() will decide on which device to focus on by identifier
@@ -834,9 +958,10 @@ public class Devtool {
 		
 		if (deviceToUse == null) {
 			// TODO no device found warning message
+			return TaskFuture.none();
 		} else {
 			// add task
-			taskManager.addTask( new Task(Task.DEVICE_START, null, deviceToUse) );
+			return taskManager.addTask( new Task(Task.DEVICE_START, null, deviceToUse) ).getFuture();
 		}
 	}
 	
@@ -844,8 +969,21 @@ public class Devtool {
 	 * @param identifier String value, if <code>null</code> it will use the default device,
 	 *			   if the String equals 'currentitem' it will use the currently selected item as its device.
 	 *			   An identifier equal to '0' implies a disabled emulator and will thus reset any data.
+	 *
+	 * @return Future that completes once the task is done, see <code>TaskFuture</code>.
 	 */
-	public void deviceListApplications(String identifier) {
+	public TaskFuture deviceListApplications(String identifier) {
+		return this.deviceListApplications(identifier, Task.PRIORITY_INTERACTIVE);
+	}
+	
+	/**
+	 * Method lists the applications installed on a device.
+	 * @param identifier See <code>deviceListApplications(String)</code>.
+	 * @param priority Use <code>Task.PRIORITY_BACKGROUND</code> if the user did not ask for the list.
+	 *
+	 * @return Future that completes once the task is done, see <code>TaskFuture</code>.
+	 */
+	public TaskFuture deviceListApplications(String identifier, int priority) {
 		System.out.println("\nListing applications on a device");
 		
 		// getDevice() will decide on which device to focus on by identifier
@@ -853,19 +991,25 @@ public class Devtool {
 		
 		if (deviceToUse == null) {
 			// TODO no device found warning message
+			return TaskFuture.none();
 		} else if ( !identifier.equals("0") ) {
 			// disabled emulators do get nothing, preventing possible errors during task handling
 			// add task
-			taskManager.addTask( new Task(Task.DEVICE_LIST_APPS, null, deviceToUse) );
+			Task listApps = new Task(Task.DEVICE_LIST_APPS, null, deviceToUse);
+			listApps.setPriority(priority);
+			return taskManager.addTask(listApps).getFuture();
 		}
+		return TaskFuture.none();
 	}
 	
 	/**
 	 * Method opens a new Finder window focused on the project folder.
 	 * @param identifier String value, if <code>null</code> it will use the default device,
 	 *			   if the String equals 'currentitem' it will use the currently selected item as its device.
+	 *
+	 * @return Future that completes once the task is done, see <code>TaskFuture</code>.
 	 */
-	public void deviceRevealInFinder(String identifier) {
+	public TaskFuture deviceRevealInFinder(String identifier) {
 		System.out.println("\nRevealing device in Finder");
 		
 		// getDevice() will decide on which device to focus on by identifier
@@ -873,17 +1017,20 @@ public class Devtool {
 		
 		if (deviceToUse == null) {
 			// TODO no device found warning message
+			return TaskFuture.none();
 		} else {
 			// add task
-			taskManager.addTask( new Task(Task.DEVICE_REVEAL, null, deviceToUse) );
+			return taskManager.addTask( new Task(Task.DEVICE_REVEAL, null, deviceToUse) ).getFuture();
 		}
 	}
 	
 	/**
 	 * @param identifier String value, if <code>null</code> it will use the default device,
 	 *			if the String equals 'currentitem' it will use the currently selected item as its device.
+	 *
+	 * @return Future that completes once the task is done, see <code>TaskFuture</code>.
 	 */
-	public void deviceEnableHostMode(String identifier) {
+	public TaskFuture deviceEnableHostMode(String identifier) {
 		System.out.println("\nEnabling Emulator Host Mode");
 		
 		// getDevice() will decide on which device to focus on by identifier
@@ -891,8 +1038,9 @@ public class Devtool {
 		
 		if (deviceToUse == null) {
 			// TODO no device found warning message
+			return TaskFuture.none();
 		} else {
-			taskManager.addTask( new Task(Task.DEVICE_ENABLE_HOST_MODE, null, deviceToUse) );
+			return taskManager.addTask( new Task(Task.DEVICE_ENABLE_HOST_MODE, null, deviceToUse) ).getFuture();
 		}
 	}
 
@@ -921,8 +1069,10 @@ public class Devtool {
 	 * @param identifier String value, if <code>null</code> it will use the default device,
 	 *			if the String equals 'currentitem' it will use the currently selected item as its device.
 	 * @param level The log level to be set as <code>String</code>.
+	 *
+	 * @return Future that completes once the task is done, see <code>TaskFuture</code>.
 	 */
-	public void deviceSetLogLevel(String deviceID, String level) {
+	public TaskFuture deviceSetLogLevel(String deviceID, String level) {
 		if (level == null) {
 			System.out.println("\nNo log level was given, thus no device log level set.");
 		} else {
@@ -936,17 +1086,20 @@ public class Devtool {
 			} else {
 				deviceToUse.setLogLevel(level, false);
 				String[] args = { level };
-				taskManager.addTask( new Task(Task.DEVICE_LOG_LEVEL, null, deviceToUse, args) );
+				return taskManager.addTask( new Task(Task.DEVICE_LOG_LEVEL, null, deviceToUse, args) ).getFuture();
 			}
 		}
+		return TaskFuture.none();
 	}
 	
 	// Resource Monitor ---------------------------------------------------
 	
 	/**
 	 * Opens the Resource Monitor for a specified device, app may be passed on if called from project item
+	 *
+	 * @return Future that completes once the task is done, see <code>TaskFuture</code>.
 	 */
-	public void openResourceMonitor(String identifier) {
+	public TaskFuture openResourceMonitor(String identifier) {
 		System.out.println("\nOpening HP resource monitor");
 		
 		if ( currentItem.isDevice() ) {
@@ -955,13 +1108,14 @@ public class Devtool {
 			
 			if (deviceToUse == null) {
 				// TODO no device found warning message
+				return TaskFuture.none();
 			} else {
 				// add task
-				taskManager.addTask( new Task(Task.RESOURCE_MONITOR, null, deviceToUse) );
+				return taskManager.addTask( new Task(Task.RESOURCE_MONITOR, null, deviceToUse) ).getFuture();
 			}
 		} else {
 			// for a project focus: also pass on the project, along with default device
-			taskManager.addTask( new Task(Task.RESOURCE_MONITOR, currentItem, currentDevice) );
+			return taskManager.addTask( new Task(Task.RESOURCE_MONITOR, currentItem, currentDevice) ).getFuture();
 		}
 	}
 	
@@ -987,14 +1141,50 @@ public class Devtool {
 		jslintWindow = null;
 	}
 	
+	// Task timeline window methods --------------------------------------
+	
+	/**
+	 * Opens the task timeline window, or brings it to the front if it is open already.
+	 */
+	public void openTaskTimelineWindow() {
+		
+		if (taskTimelineWindow == null) {
+			taskTimelineWindow = new TaskTimelineFrame(this, taskManager);
+		} else {
+			taskTimelineWindow.toFront();
+		}
+	}
+	
+	public void disposeTaskTimelineWindow() {
+		taskTimelineWindow = null;
+	}
+	
 	// Other methods --------------------------------------------
 	
 	/**
 	 * Providing access to classes from other packages (as a proxy)
 	 * to protected BottomBar in protected DevtoolFrame.
 	 */
-	public void setActivityIndicator(int numberOfTasks) {
-		devwindow.bottomBar.setActivityIndicator( numberOfTasks );
+	public void setActivityIndicator(final int numberOfTasks) {
+		// called from the worker threads, the bar is only changed on the event dispatch thread
+		javax.swing.SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				devwindow.bottomBar.setActivityIndicator( numberOfTasks );
+			}
+		});
+	}
+	
+	/**
+	 * Providing access to classes from other packages (as a proxy)
+	 * to show a short notice in the protected BottomBar, e.g. when a task timed out.
+	 */
+	public void setActivityNotice(final String notice) {
+		// as above, the notice timer is also (re)started on the event dispatch thread
+		javax.swing.SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				devwindow.bottomBar.setActivityNotice( notice );
+			}
+		});
 	}
 	
 	/**
@@ -1098,20 +1288,17 @@ public class Devtool {
 	    new Thread (new Runnable () {
 			public void run () {
 				// while there are still agents left do not quit
-				// this allows agents to migrate
-				int naps = 50; // unless a limit of short naps has been reached
-				  	
-				do {
-					// sleep for some time
-					try {
-					    Thread.currentThread().sleep(200); // 0,2 second
-					}
-					catch (java.lang.InterruptedException ie) {}
-					
-					// decrement counter
-					naps--;
-					
-				} while ( taskManager.hasTasks() && naps > 0);
+				// this allows agents to migrate, unless they take longer than 10 seconds
+				try {
+					taskManager.awaitIdle(10000);
+				}
+				catch (java.lang.InterruptedException ie) {}
+				
+				// no more work to be done
+				taskManager.shutdown();
+				
+				// stop whatever is still running, e.g. palm-log or an ssh tunnel, so nothing is left orphaned
+				ProcessSupervisor.terminateAll(ProcessSupervisor.GRACE_PERIOD);
 				
 				// End it all
 				setLogState(false);
@@ -3,12 +3,16 @@
  */
 package webosdevtool;
 
+import java.awt.Cursor;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 
 import javax.swing.ImageIcon;
 import javax.swing.JLabel;
 import javax.swing.JButton;
+import javax.swing.Timer;
 
 import com.explodingpixels.macwidgets.BottomBar;
 import com.explodingpixels.macwidgets.BottomBarSize;
@@ -29,6 +33,9 @@ public class DevtoolBottomBar extends BottomBar
     private JButton addButton = new JButton(MacIcons.PLUS);
 	private JButton removeButton = new JButton(MacIcons.MINUS);
     private JButton refreshButton;
+    private String activityText = "Ready";
+    private String activityNotice = null;
+    private Timer noticeTimer;
 
     // Constructor
     
@@ -72,6 +79,23 @@ public class DevtoolBottomBar extends BottomBar
         this.addComponentToLeft(removeButton);
         this.addComponentToCenter(activityIndicator);
         this.addComponentToRight(refreshButton);
+        
+        // clicking the activity shows where time goes
+        activityIndicator.setToolTipText("Click to show the task timeline");
+        activityIndicator.setCursor( Cursor.getPredefinedCursor(Cursor.HAND_CURSOR) );
+        activityIndicator.addMouseListener (new MouseAdapter () {
+            public void mouseClicked (MouseEvent e) {
+                devtool.openTaskTimelineWindow();
+            }
+        });
+        
+        // notices are only shown for a little while
+        noticeTimer = new Timer(10000, new ActionListener () {
+            public void actionPerformed (ActionEvent e) {
+                setActivityNotice(null);
+            }
+        });
+        noticeTimer.setRepeats(false);
     }
     
     // Methods
@@ -87,6 +111,31 @@ public class DevtoolBottomBar extends BottomBar
         	text = "Processing " + numberOfTasks + " tasks...";
         }
         
+        this.activityText = text;
+        updateActivityIndicator();
+    }
+    
+    /**
+     * Shows a short notice next to the activity, e.g. when a task timed out or was cancelled.
+     * The notice disappears automatically after a few seconds.
+     * @param notice Text to show, or <code>null</code> to remove the current notice.
+     */
+    public void setActivityNotice(String notice) {
+        
+        this.activityNotice = notice;
+        if (notice != null) {
+            noticeTimer.restart();
+        }
+        updateActivityIndicator();
+    }
+    
+    private void updateActivityIndicator() {
+        
+        String text = activityText;
+        if (activityNotice != null) {
+            text += " (" + activityNotice + ")";
+        }
+        
         this.activityIndicator.setText(text);
     }
     
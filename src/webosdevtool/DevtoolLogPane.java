@@ -8,15 +8,22 @@ import javax.swing.BorderFactory;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
+import javax.swing.text.BadLocationException;
 
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
+import java.util.List;
+
+import webosdevtool.logger.LogQueue;
+import webosdevtool.logger.LogScrollback;
 
 import com.explodingpixels.macwidgets.IAppWidgetFactory;
 
 public class DevtoolLogPane extends JScrollPane {
 
 	private JTextArea logTextPane;
+	private LogQueue logQueue;
+	private LogScrollback scrollback;
 
 	private boolean loggingEnabled;
 	private boolean logFresh;
@@ -42,6 +49,15 @@ public class DevtoolLogPane extends JScrollPane {
   		logTextPane.setForeground(new Color(0.95f, 0.95f, 0.95f));
   		logTextPane.setBackground(new Color(0.1f, 0.1f, 0.15f));
 
+  		// output is printed on all kinds of threads, it is shown in batches on the event dispatch thread
+  		// only the most recent lines are kept
+  		scrollback = LogScrollback.create();
+  		logQueue = new LogQueue(new LogQueue.Sink() {
+  			public void flush(List<String> additions) {
+  				showContent(additions);
+  			}
+  		});
+
   		// start logging
   		originalStdOut = System.out; // for reverting the stream
 	    logFresh = true;
@@ -50,6 +66,8 @@ public class DevtoolLogPane extends JScrollPane {
 
 	protected void clearLogContent() {
 		logFresh = true;
+		logQueue.clear();
+		scrollback.clear();
 		logTextPane.setText(null);
 	}
 	
@@ -62,13 +80,50 @@ public class DevtoolLogPane extends JScrollPane {
 		// parse new content
 		addition += "\n";
 				
-		// add new content
+		// queue new content, it is shown with the next flush
 		logFresh = false;
-		String content = logTextPane.getText();
-		content += addition;
-		logTextPane.setText(content);
+		logQueue.add(addition);
+	}
+
+	/**
+	 * Adds a batch of queued content to the text pane. Called on the event dispatch thread.
+	 * @param additions Content in the order it was added.
+	 */
+	private void showContent(List<String> additions) {
+
+		StringBuilder batch = new StringBuilder();
+		int evicted = 0;
+		for (int i = 0; i < additions.size(); i++) {
+			String text = additions.get(i);
+			batch.append(text);
+			
+			// an addition may hold several lines, the scrollback counts each of them
+			int start = 0;
+			int end = text.indexOf('\n');
+			while (end >= 0) {
+				evicted += scrollback.add( end + 1 - start );
+				start = end + 1;
+				end = text.indexOf('\n', start);
+			}
+			if ( start < text.length() ) {
+				evicted += scrollback.add( text.length() - start );
+			}
+		}
+
+		// add new content at the end of the document
+		// this costs the length of the addition only, however long the log is already
+		logTextPane.append( batch.toString() );
+		// and drop the oldest lines once the scrollback is full
+		if (evicted > 0) {
+			try {
+				logTextPane.replaceRange("", 0, logTextPane.getLineEndOffset(evicted - 1));
+			}
+			catch (BadLocationException ble) {
+				System.err.println("BadLocationException: "+ble);
+			}
+		}
 		
-		// make scrollpane focus on the bottom after setting content
+		// make scrollpane focus on the bottom after setting content, once per batch
 		// invokeLater method fires after all events have returned
 		final JScrollPane that = this; // reference otherwise gets borked
 		javax.swing.SwingUtilities.invokeLater(new Runnable() {
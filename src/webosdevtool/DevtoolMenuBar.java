@@ -3,7 +3,7 @@
  */
 package webosdevtool;
 
-import webosdevtool.process.FileOperator;
+import webosdevtool.process.ToolResolver;
 
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
@@ -45,11 +45,13 @@ public class DevtoolMenuBar extends JMenuBar {
 	private AMenuItem fileMenuClose = null;
 	private AMenuItem fileMenuCloseAll = null;
 	private AMenuItem fileMenuRefresh = null;
+	private AMenuItem fileMenuCancelTasks = null;
 	private AMenuItem projectMenuRevealFinder = null;
 	private AMenuItem projectMenuUpdateInfo = null;
 	private AMenuItem projectMenuJSLint = null;
 	private AMenuItem projectMenuNewScene = null;
 	private AMenuItem projectMenuRun = null;
+	private AMenuItem projectMenuRunAll = null;
 	private AMenuItem projectMenuDeploy = null;
 	private AMenuItem projectMenuPackage = null;
 	private AMenuItem projectMenuInstall = null;
@@ -138,6 +140,14 @@ public class DevtoolMenuBar extends JMenuBar {
 			}
 	    });
 	    fileMenu.add(fileMenuRefresh);
+	    // File > Cancel Tasks
+		fileMenuCancelTasks = new AMenuItem("Cancel Tasks for Selection", KeyEvent.VK_PERIOD);
+		fileMenuCancelTasks.addActionListener (new ActionListener () {
+			public void actionPerformed (ActionEvent e) {
+			  devtool.cancelTasks();
+			}
+	    });
+	    fileMenu.add(fileMenuCancelTasks);
 		
 		// Project menu
 		projectMenu = new JMenu("Project");
@@ -187,6 +197,14 @@ public class DevtoolMenuBar extends JMenuBar {
 			}
 	    });
 	     projectMenu.add(projectMenuRun);
+		// Project > Run on All Devices
+		projectMenuRunAll = new AMenuItem("Package, Install & Run on All Devices", true, true, KeyEvent.VK_R);
+		projectMenuRunAll.addActionListener (new ActionListener () {
+			public void actionPerformed (ActionEvent e) {
+			  devtool.projectRunOnAllDevices();
+			}
+	    });
+	    projectMenu.add(projectMenuRunAll);
 	    // Separator
 		projectMenu.addSeparator();
 	    // Project > Deploy
@@ -330,7 +348,7 @@ public class DevtoolMenuBar extends JMenuBar {
 		browserGroup = new ButtonGroup();
 	    // Browsers > Open Safari
    	    //		only add when available
-   	    if ( FileOperator.fileExists("/Applications/Safari.app") ) {
+   	    if ( ToolResolver.findApplication("Safari") != null ) {
 			browserMenuSafari = new ARadioMenuItem("Safari");
 			browserMenuSafari.addActionListener (new ActionListener () {
 				public void actionPerformed (ActionEvent e) {
@@ -342,7 +360,7 @@ public class DevtoolMenuBar extends JMenuBar {
    	    }
 	    // Browsers > Open Google Chrome
 	    //		only add when available
-	    if ( FileOperator.fileExists("/Applications/Google Chrome.app") ) {
+	    if ( ToolResolver.findApplication("Google Chrome") != null ) {
 			browserMenuChrome = new ARadioMenuItem("Google Chrome");
 			browserMenuChrome.addActionListener (new ActionListener () {
 				public void actionPerformed (ActionEvent e) {
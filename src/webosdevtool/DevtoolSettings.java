@@ -13,6 +13,8 @@ import com.google.gson.JsonParseException;
  * <ul>
  *  <li>default browser</li>
  *  <li>Clear palm-log window on restart of logging</li>
+ *  <li>SDK location</li>
+ *  <li>Scrollback limits of log windows</li>
  * </ul>
  * <br/>
  *
@@ -75,6 +77,30 @@ import com.google.gson.JsonParseException;
  		saveSettings(ps);
  	}
  	
+	/**
+	 * @return Folder of the SDK, or <code>null</code> to have it looked for.
+	 */
+ 	public static String getPropertySDKLocation() {
+ 		DevtoolProperties ps = getSettings();
+ 		return (ps == null) ? null : ps.sdkLocation;
+ 	}
+ 	
+	/**
+	 * @return Maximum number of lines a log window keeps, 0 for the default, negative for no limit.
+	 */
+ 	public static int getPropertyScrollbackLines() {
+ 		DevtoolProperties ps = getSettings();
+ 		return (ps == null) ? 0 : ps.scrollbackLines;
+ 	}
+ 	
+	/**
+	 * @return Maximum number of characters a log window keeps, 0 for the default, negative for no limit.
+	 */
+ 	public static int getPropertyScrollbackChars() {
+ 		DevtoolProperties ps = getSettings();
+ 		return (ps == null) ? 0 : ps.scrollbackChars;
+ 	}
+ 	
  	public static String[] getPreviouslyOpenProjects() {
  		DevtoolProperties ps = getSettings();
  		return ps.getOpenProjects();
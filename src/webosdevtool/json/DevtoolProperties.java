@@ -13,6 +13,9 @@ public class DevtoolProperties {
 	
 	public String defaultBrowser = null;
 	public boolean cleanLogOnRestart = false;
+	public String sdkLocation = null;
+	public int scrollbackLines = 0;
+	public int scrollbackChars = 0;
 	
 	// Recent projects
 	
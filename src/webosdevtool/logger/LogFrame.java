@@ -2,12 +2,15 @@ package webosdevtool.logger;
 
 import webosdevtool.Device;
 import webosdevtool.AMenuItem;
+import webosdevtool.process.CommandBuilder;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Component;
 import java.awt.Font;
+import java.awt.FontMetrics;
 import java.awt.Frame;
 import java.awt.Dimension;
 import java.awt.Toolkit;
@@ -18,16 +21,20 @@ import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 
 import javax.swing.BorderFactory;
+import javax.swing.DefaultListCellRenderer;
 import javax.swing.JButton;
 import javax.swing.JComboBox;
-import javax.swing.JTextArea;
+import javax.swing.JList;
 import javax.swing.JFrame;
 import javax.swing.JMenu;
 import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JMenuBar;
 import javax.swing.JPanel;
+import javax.swing.JOptionPane;
+import javax.swing.JScrollBar;
 import javax.swing.JScrollPane;
 import javax.swing.KeyStroke;
+import javax.swing.border.Border;
 
 import com.explodingpixels.macwidgets.BottomBar;
 import com.explodingpixels.macwidgets.BottomBarSize;
@@ -45,7 +52,8 @@ public class LogFrame extends JFrame {
 	private BottomBar logBottomBar;
 	private JButton closeButton;
 	private JButton toggleButton;
-	private JTextArea logTextPane;
+	private JList logList;
+	private LogListModel logModel;
 	private JScrollPane logScrollPane;
 	private JCheckBoxMenuItem logMenuToggleButton;
 	private JCheckBoxMenuItem logMenuClearOnRestart;
@@ -57,6 +65,7 @@ public class LogFrame extends JFrame {
 	protected String appID;
 	protected Device device;
 	private LogProcessor logProcessor;
+	private LogQueue logQueue;
 	
 	// constructor
 	public LogFrame (String appID, Device device) {
@@ -119,6 +128,32 @@ public class LogFrame extends JFrame {
 			}
 	    });
 	    logMenu.add(logMenuClear);
+		// Separator
+	    logMenu.addSeparator();
+		// Log > Go to line
+		AMenuItem logMenuGoToLine = new AMenuItem("Go to Line\u2026", KeyEvent.VK_G);
+	    logMenuGoToLine.addActionListener (new ActionListener () {
+			public void actionPerformed (ActionEvent e) {
+				goToLine();
+			}
+	    });
+	    logMenu.add(logMenuGoToLine);
+		// Log > Scroll to end
+		AMenuItem logMenuScrollToEnd = new AMenuItem("Scroll to End", KeyEvent.VK_DOWN);
+	    logMenuScrollToEnd.addActionListener (new ActionListener () {
+			public void actionPerformed (ActionEvent e) {
+				scrollToEnd();
+			}
+	    });
+	    logMenu.add(logMenuScrollToEnd);
+		// Log > Next warning or error
+		AMenuItem logMenuNextProblem = new AMenuItem("Next Warning or Error", KeyEvent.VK_E);
+	    logMenuNextProblem.addActionListener (new ActionListener () {
+			public void actionPerformed (ActionEvent e) {
+				goToNextProblem();
+			}
+	    });
+	    logMenu.add(logMenuNextProblem);
 		// Window menu
 		JMenu windowMenu = new JMenu("Window");
 		// Window > Minimize
@@ -151,21 +186,34 @@ public class LogFrame extends JFrame {
 	    // Set menubar
 	    setJMenuBar(logMenuBar);
 		
-		// Log text pane
-		logTextPane = new JTextArea();
-        logTextPane.setFont(new Font("Menlo", Font.PLAIN, 11));
-        logTextPane.setLineWrap(true);
-        logTextPane.setWrapStyleWord(false);
-		logTextPane.setEditable(false);
-		logTextPane.setBorder(BorderFactory.createEmptyBorder(5,5,5,5));
+		// Log list, one row per line
+		// only the rows in view are painted, and as all rows have the same size none has to be measured
+		// so adding lines and scrolling cost the same however long the log is
+		// only the most recent lines are kept, so a log that runs for hours does not use up all memory
+		logModel = new LogListModel( LogScrollback.create() );
+		logList = new JList(logModel);
+        logList.setFont(new Font("Menlo", Font.PLAIN, 11));
+		logList.setBorder(BorderFactory.createEmptyBorder(5,5,5,5));
+		logList.setCellRenderer( new LogCellRenderer() );
+		FontMetrics metrics = logList.getFontMetrics( logList.getFont() );
+		logList.setFixedCellHeight( metrics.getHeight() );
+		updateCellWidth();
 		        
-		// Put the editor pane in a scroll pane.
-		logScrollPane = new JScrollPane(logTextPane);
+		// Put the list in a scroll pane.
+		// lines are not wrapped, long lines can be scrolled to instead
+		logScrollPane = new JScrollPane(logList);
 		IAppWidgetFactory.makeIAppScrollPane(logScrollPane);
-		logScrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
+		logScrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED);
 		logScrollPane.setPreferredSize(new Dimension(650, 300));
 		logScrollPane.setMinimumSize(new Dimension(300, 100));
 		
+		// log lines arrive on other threads, they are shown in batches on the event dispatch thread
+		logQueue = new LogQueue(new LogQueue.Sink() {
+			public void flush(List<String> additions) {
+				showContent(additions);
+			}
+		});
+		
 		// Bottom bar
 		logBottomBar = new BottomBar(BottomBarSize.LARGE);
 		logBottomBar.installWindowDraggerOnWindow(this);
@@ -284,7 +332,9 @@ public class LogFrame extends JFrame {
 	
 	protected void clearContent() {
 		logFresh = true;
-		logTextPane.setText(null);
+		logQueue.clear();
+		logModel.clear();
+		updateCellWidth();
 	}
 	
 	protected void setContent(String c) {
@@ -295,40 +345,125 @@ public class LogFrame extends JFrame {
 	protected void addContent(String addition) {
 		
 		// parse new content
+		// lines are parsed into records once they are shown, which also marks app restarts
 		addition += "\n";
-		// add a linefeed at the beginning if content signals an app restart
-		if (addition.contains("/usr/palm/frameworks")) {
-			addition = "\n" + addition;
-		}
 		
-		// add new content
+		// queue new content, it is shown with the next flush
+		// this may be called from any thread, as the text pane itself is only changed on the event dispatch thread
 		logFresh = false;
-		String content = logTextPane.getText();
-		content += addition;
-		logTextPane.setText(content);
+		logQueue.add(addition);
+	}
+	
+	/**
+	 * Adds a batch of queued content to the log list. Called on the event dispatch thread.
+	 * @param additions Content in the order it was added.
+	 */
+	private void showContent(List<String> additions) {
+		
+		// keep following the log, unless the user scrolled away from the end
+		boolean following = isScrolledToEnd();
 		
-		// make scrollpane focus on the bottom after setting content
+		// add new lines, the oldest are dropped once the scrollback is full
+		logModel.add(additions);
+		updateCellWidth();
+		
+		if (following) {
+			scrollToEnd();
+		}
+	}
+	
+	/**
+	 * @return True if the last line is in view, or nearly so.
+	 */
+	private boolean isScrolledToEnd() {
+		JScrollBar bar = logScrollPane.getVerticalScrollBar();
+		return bar.getValue() + bar.getVisibleAmount() >= bar.getMaximum() - logList.getFixedCellHeight();
+	}
+	
+	/**
+	 * Makes the scroll pane show the last line.
+	 */
+	protected void scrollToEnd() {
 		// invokeLater method fires after all events have returned
 		javax.swing.SwingUtilities.invokeLater(new Runnable() {
 		   public void run() {
-		   		int maxValue = logScrollPane.getVerticalScrollBar().getMaximum();
-		   		logScrollPane.getVerticalScrollBar().setValue( maxValue );
+		   		if ( logModel.getSize() > 0 ) {
+		   			logList.ensureIndexIsVisible( logModel.getSize() - 1 );
+		   		}
 		   }
 		});
 	}
 	
+	/**
+	 * Asks for a line number, and selects and shows that line.
+	 * Lines are numbered from the start of the log, including lines that were dropped since.
+	 */
+	protected void goToLine() {
+		
+		if ( logModel.getSize() == 0 ) {
+			return;
+		}
+		long firstLine = logModel.getLineNumber(0);
+		long lastLine = logModel.getLineNumber( logModel.getSize() - 1 );
+		String answer = JOptionPane.showInputDialog(this, "Go to line (" + firstLine + " - " + lastLine + "):");
+		if (answer == null) {
+			return;
+		}
+		
+		try {
+			int index = logModel.getIndexOfLine( Long.parseLong( answer.trim() ) );
+			logList.setSelectedIndex(index);
+			logList.ensureIndexIsVisible(index);
+		}
+		catch (NumberFormatException nfe) {
+			// not a number, nothing to go to
+		}
+	}
+	
+	/**
+	 * Selects and shows the next line with a warning or error, after the selected line.
+	 * Only the parsed levels are looked at, so this is fast even for a long log.
+	 */
+	protected void goToNextProblem() {
+		
+		LogRecordBuffer records = logModel.getRecords();
+		int index = records.findNext( logList.getSelectedIndex() + 1, LogRecordParser.WARNING, LogRecordBuffer.NONE );
+		if (index < 0) {
+			// start over at the top
+			index = records.findNext( 0, LogRecordParser.WARNING, LogRecordBuffer.NONE );
+		}
+		if (index >= 0) {
+			logList.setSelectedIndex(index);
+			logList.ensureIndexIsVisible(index);
+		} else {
+			Toolkit.getDefaultToolkit().beep();
+		}
+	}
+	
+	/**
+	 * Sizes the rows of the list to fit the longest line, so the list never has to measure its rows.
+	 * The font is monospaced, so the width follows from the number of characters.
+	 */
+	private void updateCellWidth() {
+		FontMetrics metrics = logList.getFontMetrics( logList.getFont() );
+		// a little extra for the border of the cell renderer
+		int width = logModel.getLongestLine() * metrics.charWidth('m') + 4;
+		if ( width != logList.getFixedCellWidth() ) {
+			logList.setFixedCellWidth(width);
+		}
+	}
+	
 	private void startLogStream() {
 				
 		// palm-log -f --device=<device> --system-log-level {error,warning,info} <appid>
 		
 		// build the system command we want to run
-		List<String> commands = new ArrayList<String>();
-		commands.add("/bin/bash");
-		commands.add("/opt/PalmSDK/Current/bin/palm-log"); // palm-worm
-		commands.add("-f"); // follow until user quits it
-		commands.add("--device=" + this.device.getID() ); // specify device
-		//commands.add("--system-log-level"); // log level
-		commands.add( appID ); // <package id>
+		CommandBuilder command = CommandBuilder.sdk("palm-log");
+		command.arg("-f"); // follow until user quits it
+		command.device( this.device.getID() ); // specify device
+		//command.arg("--system-log-level"); // log level
+		command.arg( appID ); // <package id>
+		List<String> commands = command.build();
 		
 		// use separate thread to execute the command
 		// and listen to its output
@@ -381,4 +516,39 @@ public class LogFrame extends JFrame {
 			this.addContent("\nDevice log level set to: "+Device.LOG_LEVELS[index]+"\n");
 		}
 	}
-}
\ No newline at end of file
+	
+	// Inner classes
+	
+	/**
+	 * Shows a log line in the color of its level, and draws a line above a line that marks an app restart.
+	 * The size of a row does not change, so the list still does not have to measure its rows.
+	 */
+	private class LogCellRenderer extends DefaultListCellRenderer {
+		
+		private final Border restartBorder = BorderFactory.createMatteBorder(1, 0, 0, 0, Color.GRAY);
+		private final Color errorColor = new Color(0.75f, 0.1f, 0.1f);
+		private final Color warningColor = new Color(0.7f, 0.45f, 0f);
+		
+		public Component getListCellRendererComponent(JList list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+			
+			super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+			
+			LogRecordBuffer records = logModel.getRecords();
+			if ( index < 0 || index >= records.size() ) {
+				return this;
+			}
+			if (!isSelected) {
+				byte level = records.getLevel(index);
+				if (level <= LogRecordParser.ERROR) {
+					setForeground(errorColor);
+				} else if (level == LogRecordParser.WARNING) {
+					setForeground(warningColor);
+				}
+			}
+			if ( records.isRestart(index) ) {
+				setBorder(restartBorder);
+			}
+			return this;
+		}
+	}
+}
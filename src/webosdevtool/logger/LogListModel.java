@@ -0,0 +1,148 @@
+package webosdevtool.logger;
+
+import java.util.List;
+
+import javax.swing.AbstractListModel;
+
+/**
+ * LogListModel holds the lines of a log for a <code>JList</code>, so only the lines in view are ever
+ * painted. Lines are kept in a <code>LogRecordBuffer</code>, which also holds their parsed fields,
+ * and looked up by index in O(1). The oldest are dropped once the <code>LogScrollback</code> limits are reached.
+ * <br />
+ * Lines keep their number from the start of the log, also after older lines were dropped,
+ * so a line can be found again with <code>getIndexOfLine()</code>.
+ * <br />
+ * The model is meant to be changed on the event dispatch thread only, see <code>LogQueue</code>.
+ */
+public class LogListModel extends AbstractListModel {
+
+	// Variables
+
+	private LogScrollback scrollback;
+	private LogRecordBuffer records;
+	private long dropped;
+	private int longest;
+
+	// Constructor
+
+	/**
+	 * @param scrollback Limits of the log.
+	 */
+	public LogListModel (LogScrollback scrollback) {
+		this.scrollback = scrollback;
+		this.records = new LogRecordBuffer();
+		this.dropped = 0;
+		this.longest = 0;
+	}
+
+	// Methods
+
+	/**
+	 * Adds text after the last line. Text with line terminators is split into lines;
+	 * a terminator at the end of a text does not start a new, empty line.
+	 *
+	 * @param additions Text in the order it was added.
+	 */
+	public void add(List<String> additions) {
+
+		int oldCount = records.size();
+		int removed = 0;
+
+		for (int i = 0; i < additions.size(); i++) {
+			String text = additions.get(i);
+			int start = 0;
+			int end = text.indexOf('\n');
+			while (end >= 0) {
+				removed += addLine( text.substring(start, end) );
+				start = end + 1;
+				end = text.indexOf('\n', start);
+			}
+			if ( start < text.length() ) {
+				removed += addLine( text.substring(start) );
+			}
+		}
+
+		// the views only need to hear of the net change
+		int removedOld = Math.min(removed, oldCount);
+		if (removedOld > 0) {
+			fireIntervalRemoved(this, 0, removedOld - 1);
+		}
+		int addedFrom = oldCount - removedOld;
+		if (records.size() > addedFrom) {
+			fireIntervalAdded(this, addedFrom, records.size() - 1);
+		}
+	}
+
+	/**
+	 * Removes all lines, and starts numbering lines from 1 again.
+	 */
+	public void clear() {
+
+		int oldCount = records.size();
+		records.clear();
+		dropped = 0;
+		longest = 0;
+		scrollback.clear();
+
+		if (oldCount > 0) {
+			fireIntervalRemoved(this, 0, oldCount - 1);
+		}
+	}
+
+	public int getSize() {
+		return records.size();
+	}
+
+	public Object getElementAt(int index) {
+		return records.getLine(index);
+	}
+
+	/**
+	 * @return The lines with their parsed fields, to be read only. Indexes are the same as in this model.
+	 */
+	public LogRecordBuffer getRecords() {
+		return records;
+	}
+
+	/**
+	 * @param index Index of a line in this model.
+	 * @return Number of the line since the start of the log, starting at 1.
+	 */
+	public long getLineNumber(int index) {
+		return dropped + index + 1;
+	}
+
+	/**
+	 * @param lineNumber Number of a line since the start of the log, starting at 1.
+	 * @return Index of the line in this model, or of the nearest line that is still kept.
+	 */
+	public int getIndexOfLine(long lineNumber) {
+		long index = lineNumber - 1 - dropped;
+		return (int) Math.max( 0, Math.min(index, records.size() - 1) );
+	}
+
+	/**
+	 * @return Length in characters of the longest line that was added since the log was cleared.
+	 */
+	public int getLongestLine() {
+		return longest;
+	}
+
+	/**
+	 * Adds one line and drops the oldest lines if the scrollback says so.
+	 *
+	 * @return Number of lines that were dropped.
+	 */
+	private int addLine(String line) {
+
+		records.add(line);
+		longest = Math.max( longest, line.length() );
+
+		// the line terminator counts as well
+		int removed = scrollback.add( line.length() + 1 );
+
+		records.removeFirst(removed);
+		dropped += removed;
+		return removed;
+	}
+}
@@ -4,12 +4,22 @@
 
 package webosdevtool.logger;
 
+import webosdevtool.process.ProcessSupervisor;
+
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 
 import java.util.List;
 
+import devdaily.OutputLineListener;
+import devdaily.ThreadedStreamHandler;
+
+/**
+ * LogProcessor runs <code>palm-log</code> and passes each line it writes on to the LogFrame.
+ * <br />
+ * The output is read by the shared <code>StreamPump</code>, which never blocks on the stream.
+ * Stopping therefore takes effect right away: the pump lets go of the stream on its next poll
+ * and this thread returns, rather than waiting for the device to log another line.
+ */
 public class LogProcessor extends Thread {
 	
 	// Variables
@@ -17,15 +27,18 @@ public class LogProcessor extends Thread {
 	protected LogFrame logFrame;
 	private List<String> commands;
 	private Process process;
-	private InputStream inputStream;
-	private ThreadedLogStreamHandler inputStreamHandler;
-	private boolean active;
+	private ThreadedStreamHandler outputHandler;
+	private volatile boolean active;
+	private boolean stopped;
+	// not this, as Thread.join() waits on the monitor of the thread itself
+	private final Object lock = new Object();
 	
 	// Constructor
 	
 	public LogProcessor (LogFrame lf, List<String> commands) {
 		this.logFrame = lf;
 		this.commands = commands;
+		this.stopped = false;
 	}
 	
 	// Methods
@@ -34,23 +47,29 @@ public class LogProcessor extends Thread {
 	    try { 
 	    	ProcessBuilder pb = new ProcessBuilder(commands);
 	    	pb = pb.redirectErrorStream(true);
-	    	active = true;
-			process = pb.start();
+	    	ThreadedStreamHandler handler;
+	    	synchronized (lock) {
+	    		if (stopped) {
+	    			return;
+	    		}
+	    		active = true;
+	    		process = pb.start();
+	    		ProcessSupervisor.register(process, "palm-log");
+				
+	    		// add new content to editor pane of LogFrame as it comes in
+	    		handler = new ThreadedStreamHandler( process.getInputStream(), process );
+	    		handler.setRetainLimit(0);
+	    		handler.setOutputLineListener(new OutputLineListener() {
+	    			public void outputLine(String line) {
+	    				logFrame.addContent(line);
+	    			}
+	    		});
+	    		handler.start();
+	    		outputHandler = handler;
+	    	}
 			
-			inputStream = process.getInputStream();
-			inputStreamHandler = new ThreadedLogStreamHandler(this, inputStream);
-			inputStreamHandler.setDaemon(true);
-			inputStreamHandler.start();
-			
-			// TODO a better way to do this?
-			int exitValue = process.waitFor();
-			
-			// when returning from the wait prepare for exit
-			active = false;
-			
-			// TODO a better way to do this?
-			inputStreamHandler.interrupt();
-			inputStreamHandler.join();
+			// returns once palm-log has exited and its output is read, or once stopAll() is called
+			handler.join();
 	    }
 	    catch (java.io.IOException ioe) {
 	    	System.out.println("IOException: "+ioe);
@@ -67,16 +86,23 @@ public class LogProcessor extends Thread {
 	    }
 	}
 	
+	/**
+	 * Stops reading the log and stops <code>palm-log</code>. Returns right away; the thread
+	 * of this processor finishes within a few milliseconds.
+	 */
 	public void stopAll() {
-		// stop waiting for process
-		process.destroy();
-		try {
-			// this should cause the streamHandler to exit
-			inputStream.close();
+		
+		Process p;
+		synchronized (lock) {
+			stopped = true;
+			active = false;
+			if (outputHandler != null) {
+				outputHandler.stop();
+			}
+			p = process;
 		}
-		catch (java.io.IOException ioe) {
-	    	System.out.println("IOException: "+ioe);
-	    }
+		// palm-log is a script so its children are stopped as well
+		ProcessSupervisor.terminate(p);
 	}
 	
 	/**
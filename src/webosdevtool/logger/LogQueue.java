@@ -0,0 +1,105 @@
+package webosdevtool.logger;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.Timer;
+
+/**
+ * LogQueue takes log text from any thread and hands it to the GUI in batches, on the event dispatch thread.
+ * <br />
+ * Adding text only puts it in a queue that needs no lock, so the thread that reads a log never waits
+ * for the GUI. The first addition after a flush starts a timer, and when it fires everything that was added
+ * in the meantime is passed to the <code>Sink</code> at once. A burst of log lines thus leads to one update
+ * of the text (and one scroll) per <code>FLUSH_INTERVAL</code>, rather than one per line.
+ */
+public class LogQueue {
+
+	// Variables
+
+	/**
+	 * Time in milliseconds between the first addition and the flush that shows it, about 30 times a second.
+	 */
+	public static final int FLUSH_INTERVAL = 33;
+
+	/**
+	 * Receives the text that was added, always on the event dispatch thread.
+	 */
+	public interface Sink {
+		/**
+		 * @param additions Text in the order it was added, at least one element.
+		 */
+		void flush(List<String> additions);
+	}
+
+	private final Sink sink;
+	private final ConcurrentLinkedQueue<String> pending;
+	private final AtomicBoolean scheduled;
+	private final Timer timer;
+
+	// Constructor
+
+	/**
+	 * @param sink Receives batches of text on the event dispatch thread.
+	 */
+	public LogQueue (Sink sink) {
+		this.sink = sink;
+		this.pending = new ConcurrentLinkedQueue<String>();
+		this.scheduled = new AtomicBoolean(false);
+
+		this.timer = new Timer(FLUSH_INTERVAL, new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				flush();
+			}
+		});
+		this.timer.setRepeats(false);
+		// a timer started during a flush must not be merged with the one that is firing, or its text would wait forever
+		this.timer.setCoalesce(false);
+	}
+
+	// Methods
+
+	/**
+	 * Adds text, which is shown with the next flush. May be called from any thread.
+	 *
+	 * @param addition Text to add.
+	 */
+	public void add(String addition) {
+		pending.offer(addition);
+
+		// only the first addition after a flush has to start the timer
+		if ( scheduled.compareAndSet(false, true) ) {
+			timer.start();
+		}
+	}
+
+	/**
+	 * Drops text that was added but not shown yet, e.g. when the log is cleared.
+	 */
+	public void clear() {
+		pending.clear();
+	}
+
+	/**
+	 * Passes everything that was added since the last flush to the sink.
+	 */
+	private void flush() {
+
+		// additions from here on start the timer again
+		scheduled.set(false);
+
+		List<String> batch = new ArrayList<String>();
+		String addition;
+		while ( (addition = pending.poll()) != null ) {
+			batch.add(addition);
+		}
+		if ( !batch.isEmpty() ) {
+			sink.flush(batch);
+		}
+	}
+}
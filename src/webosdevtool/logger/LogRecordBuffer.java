@@ -0,0 +1,466 @@
+package webosdevtool.logger;
+
+/**
+ * LogRecordBuffer keeps the lines of a log together with their parsed fields, in a ring.
+ * <br />
+ * Fields are stored per column, in arrays of primitives: the time stamp, level, process ID, process
+ * and application (as numbers into a table of names, each name stored once), where the message starts,
+ * and whether the line marks a restart. Filtering or counting lines only reads these arrays, without
+ * looking at the text again. Counts per level are kept up to date as lines come and go.
+ * <br />
+ * Names that no line uses any more are dropped from time to time, which renumbers the others: numbers
+ * from <code>getProcessID()</code>, <code>getAppID()</code> and <code>getID()</code> are only valid until
+ * lines are removed.
+ * <br />
+ * Lines are added at the end and removed from the start, both in O(1).
+ * The buffer is not thread-safe, it is meant to be used on the event dispatch thread.
+ */
+public class LogRecordBuffer {
+
+	// Variables
+
+	/**
+	 * Value of <code>getProcessID()</code> and <code>getAppID()</code> for lines without one.
+	 */
+	public static final int NONE = -1;
+
+	private final LogRecordParser parser;
+	private final SymbolTable symbols;
+
+	private String[] lines;
+	private long[] times;
+	private byte[] levels;
+	private int[] pids;
+	private int[] processes;
+	private int[] apps;
+	private int[] messageStarts;
+	private boolean[] restarts;
+
+	private int first;
+	private int count;
+	private int[] levelCounts;
+	private int restartCount;
+
+	// Constructor
+
+	public LogRecordBuffer () {
+		this.parser = new LogRecordParser();
+		this.symbols = new SymbolTable();
+		allocate(1024);
+		this.levelCounts = new int[LogRecordParser.UNKNOWN + 1];
+	}
+
+	// Methods
+
+	/**
+	 * Parses a line and adds it after the last one.
+	 *
+	 * @param line A line of the log, without line terminator.
+	 */
+	public void add(String line) {
+
+		if ( count == lines.length ) {
+			grow();
+		}
+		int slot = (first + count) % lines.length;
+		count++;
+
+		parser.parse(line);
+		lines[slot] = line;
+		times[slot] = parser.getTime();
+		levels[slot] = parser.getLevel();
+		pids[slot] = parser.getPid();
+		processes[slot] = (parser.getProcessStart() < 0) ? NONE : symbols.add(line, parser.getProcessStart(), parser.getProcessEnd());
+		apps[slot] = (parser.getAppStart() < 0) ? NONE : symbols.add(line, parser.getAppStart(), parser.getAppEnd());
+		messageStarts[slot] = parser.getMessageStart();
+		restarts[slot] = parser.isRestart();
+
+		levelCounts[ levels[slot] ]++;
+		if ( restarts[slot] ) {
+			restartCount++;
+		}
+	}
+
+	/**
+	 * Removes the oldest lines.
+	 *
+	 * @param number Number of lines to remove.
+	 */
+	public void removeFirst(int number) {
+
+		for (int i = 0; i < number && count > 0; i++) {
+			levelCounts[ levels[first] ]--;
+			if ( restarts[first] ) {
+				restartCount--;
+			}
+			symbols.release( processes[first] );
+			symbols.release( apps[first] );
+			lines[first] = null;
+			first = (first + 1) % lines.length;
+			count--;
+		}
+
+		if ( symbols.isWasteful() ) {
+			int[] renumbered = symbols.compact();
+			for (int i = 0; i < count; i++) {
+				int slot = slot(i);
+				if (processes[slot] != NONE) {
+					processes[slot] = renumbered[ processes[slot] ];
+				}
+				if (apps[slot] != NONE) {
+					apps[slot] = renumbered[ apps[slot] ];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes all lines, and forgets the names of processes and applications.
+	 */
+	public void clear() {
+		allocate(1024);
+		symbols.clear();
+		first = 0;
+		count = 0;
+		levelCounts = new int[LogRecordParser.UNKNOWN + 1];
+		restartCount = 0;
+	}
+
+	/**
+	 * @return Number of lines.
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * @param index Index of a line, 0 is the oldest.
+	 * @return The whole line.
+	 */
+	public String getLine(int index) {
+		return lines[ slot(index) ];
+	}
+
+	/**
+	 * @return Time stamp in milliseconds since 1970, or <code>LogRecordParser.NO_TIME</code>.
+	 */
+	public long getTime(int index) {
+		return times[ slot(index) ];
+	}
+
+	/**
+	 * @return One of the level constants of <code>LogRecordParser</code>.
+	 */
+	public byte getLevel(int index) {
+		return levels[ slot(index) ];
+	}
+
+	/**
+	 * @return ID of the process that logged the line, or -1.
+	 */
+	public int getPid(int index) {
+		return pids[ slot(index) ];
+	}
+
+	/**
+	 * @return Number of the process name, or <code>NONE</code>. See <code>getName()</code>.
+	 */
+	public int getProcessID(int index) {
+		return processes[ slot(index) ];
+	}
+
+	/**
+	 * @return Number of the application ID, or <code>NONE</code>. See <code>getName()</code>.
+	 */
+	public int getAppID(int index) {
+		return apps[ slot(index) ];
+	}
+
+	/**
+	 * @return Name of the process, or <code>null</code>.
+	 */
+	public String getProcess(int index) {
+		return symbols.get( getProcessID(index) );
+	}
+
+	/**
+	 * @return Application ID, or <code>null</code>.
+	 */
+	public String getApp(int index) {
+		return symbols.get( getAppID(index) );
+	}
+
+	/**
+	 * @return The message of the line, without the fields before it. A new string on each call.
+	 */
+	public String getMessage(int index) {
+		int slot = slot(index);
+		return lines[slot].substring( messageStarts[slot] );
+	}
+
+	/**
+	 * @return True if the line shows that an application (re)starts.
+	 */
+	public boolean isRestart(int index) {
+		return restarts[ slot(index) ];
+	}
+
+	/**
+	 * @param name Name of a process or application.
+	 * @return Its number, or <code>NONE</code> if no line mentioned it.
+	 */
+	public int getID(String name) {
+		return symbols.find(name, 0, name.length());
+	}
+
+	/**
+	 * @param id Number of a process or application name.
+	 * @return The name, or <code>null</code> for <code>NONE</code>.
+	 */
+	public String getName(int id) {
+		return symbols.get(id);
+	}
+
+	/**
+	 * Finds the next line that is at least as severe as a level, and optionally from one application.
+	 *
+	 * @param from Index to start looking at.
+	 * @param level Least severe level to accept, e.g. <code>LogRecordParser.WARNING</code> for warnings and errors.
+	 * @param appID Number of the application (see <code>getID()</code>), or <code>NONE</code> for any.
+	 * @return Index of the line, or -1 if there is none.
+	 */
+	public int findNext(int from, byte level, int appID) {
+
+		for (int i = Math.max(0, from); i < count; i++) {
+			int slot = slot(i);
+			if ( levels[slot] <= level && (appID == NONE || apps[slot] == appID) ) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param level One of the level constants of <code>LogRecordParser</code>.
+	 * @return Number of lines with that level.
+	 */
+	public int getLevelCount(byte level) {
+		return levelCounts[level];
+	}
+
+	/**
+	 * @return Number of lines that mark a restart.
+	 */
+	public int getRestartCount() {
+		return restartCount;
+	}
+
+	// Helper methods
+
+	private int slot(int index) {
+		return (first + index) % lines.length;
+	}
+
+	private void allocate(int size) {
+		lines = new String[size];
+		times = new long[size];
+		levels = new byte[size];
+		pids = new int[size];
+		processes = new int[size];
+		apps = new int[size];
+		messageStarts = new int[size];
+		restarts = new boolean[size];
+	}
+
+	/**
+	 * Doubles the ring, keeping the lines in order.
+	 */
+	private void grow() {
+
+		String[] oldLines = lines;
+		long[] oldTimes = times;
+		byte[] oldLevels = levels;
+		int[] oldPids = pids;
+		int[] oldProcesses = processes;
+		int[] oldApps = apps;
+		int[] oldMessageStarts = messageStarts;
+		boolean[] oldRestarts = restarts;
+
+		allocate(oldLines.length * 2);
+
+		// the part from first to the end of the old arrays, then the part that wrapped around
+		int tail = Math.min(count, oldLines.length - first);
+		int[] from = { first, 0 };
+		int[] to = { 0, tail };
+		int[] length = { tail, count - tail };
+		for (int i = 0; i < 2; i++) {
+			System.arraycopy(oldLines, from[i], lines, to[i], length[i]);
+			System.arraycopy(oldTimes, from[i], times, to[i], length[i]);
+			System.arraycopy(oldLevels, from[i], levels, to[i], length[i]);
+			System.arraycopy(oldPids, from[i], pids, to[i], length[i]);
+			System.arraycopy(oldProcesses, from[i], processes, to[i], length[i]);
+			System.arraycopy(oldApps, from[i], apps, to[i], length[i]);
+			System.arraycopy(oldMessageStarts, from[i], messageStarts, to[i], length[i]);
+			System.arraycopy(oldRestarts, from[i], restarts, to[i], length[i]);
+		}
+		first = 0;
+	}
+
+	// Inner classes
+
+	/**
+	 * Table of names, each stored once and known by a number. Names are looked up by their position
+	 * in a line, so a name that is in the table already does not have to be cut out of the line.
+	 * The lines that use each name are counted, so unused names can be dropped with <code>compact()</code>.
+	 */
+	private static class SymbolTable {
+
+		private static final int MIN_UNUSED = 256;
+
+		private String[] names;
+		private int[] uses;
+		private int size;
+		private int unused;
+		private int[] table;
+
+		SymbolTable () {
+			clear();
+		}
+
+		void clear() {
+			names = new String[16];
+			uses = new int[16];
+			size = 0;
+			unused = 0;
+			table = new int[32];
+		}
+
+		/**
+		 * @return Number of the name at the given part of the text, which is added if it is new.
+		 */
+		int add(String text, int start, int end) {
+
+			int id = find(text, start, end);
+			if (id != NONE) {
+				if (uses[id]++ == 0) {
+					unused--;
+				}
+				return id;
+			}
+
+			if ( (size + 1) * 2 > table.length ) {
+				rehash();
+			}
+			if ( size == names.length ) {
+				String[] grownNames = new String[names.length * 2];
+				int[] grownUses = new int[names.length * 2];
+				System.arraycopy(names, 0, grownNames, 0, size);
+				System.arraycopy(uses, 0, grownUses, 0, size);
+				names = grownNames;
+				uses = grownUses;
+			}
+			names[size] = text.substring(start, end);
+			uses[size] = 1;
+			insert(size);
+			return size++;
+		}
+
+		/**
+		 * Counts one use of a name less, as a line that used it is removed.
+		 */
+		void release(int id) {
+			if (id != NONE && --uses[id] == 0) {
+				unused++;
+			}
+		}
+
+		/**
+		 * @return True if many names are no longer used, and more than are.
+		 */
+		boolean isWasteful() {
+			return unused >= MIN_UNUSED && unused * 2 > size;
+		}
+
+		/**
+		 * Drops the names that are no longer used, and numbers the others from 0 again.
+		 *
+		 * @return For each old number the new one, or <code>NONE</code> for a dropped name.
+		 */
+		int[] compact() {
+
+			int[] renumbered = new int[size];
+			int kept = 0;
+			for (int id = 0; id < size; id++) {
+				if (uses[id] > 0) {
+					names[kept] = names[id];
+					uses[kept] = uses[id];
+					renumbered[id] = kept++;
+				} else {
+					renumbered[id] = NONE;
+				}
+			}
+			for (int id = kept; id < size; id++) {
+				names[id] = null;
+			}
+			size = kept;
+			unused = 0;
+
+			int capacity = 32;
+			while (size * 2 > capacity) {
+				capacity *= 2;
+			}
+			table = new int[capacity];
+			for (int id = 0; id < size; id++) {
+				insert(id);
+			}
+			return renumbered;
+		}
+
+		/**
+		 * @return Number of the name at the given part of the text, or <code>NONE</code>.
+		 */
+		int find(String text, int start, int end) {
+
+			int length = end - start;
+			int mask = table.length - 1;
+			for (int i = hash(text, start, end) & mask; table[i] != 0; i = (i + 1) & mask) {
+				String name = names[ table[i] - 1 ];
+				if ( name.length() == length && name.regionMatches(0, text, start, length) ) {
+					return table[i] - 1;
+				}
+			}
+			return NONE;
+		}
+
+		String get(int id) {
+			return (id == NONE) ? null : names[id];
+		}
+
+		/**
+		 * Puts a name in the hash table, which holds numbers plus one so 0 marks a free place.
+		 */
+		private void insert(int id) {
+			int mask = table.length - 1;
+			int i = hash(names[id], 0, names[id].length()) & mask;
+			while (table[i] != 0) {
+				i = (i + 1) & mask;
+			}
+			table[i] = id + 1;
+		}
+
+		private void rehash() {
+			table = new int[table.length * 2];
+			for (int id = 0; id < size; id++) {
+				insert(id);
+			}
+		}
+
+		private static int hash(String text, int start, int end) {
+			int h = 0;
+			for (int i = start; i < end; i++) {
+				h = 31 * h + text.charAt(i);
+			}
+			return h ^ (h >>> 16);
+		}
+	}
+}
@@ -0,0 +1,431 @@
+package webosdevtool.logger;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * LogRecordParser picks the fields out of a <code>palm-log</code> line, such as
+ * <br />
+ * <code>2011-10-18T12:34:56.123456Z [1234] palm-webos-device user.warning LunaSysMgrJS: {com.example.app}: Warning: text</code>
+ * <br />
+ * or the same with a syslog time stamp (<code>Oct 18 12:34:56</code>). Any part may be missing;
+ * whatever cannot be recognised is taken to be the message.
+ * <br />
+ * The line is scanned once, from left to right, without regular expressions and without creating
+ * objects: the fields are kept as numbers and as positions within the line. A parser is reused for
+ * every line, so it must be used by one thread at a time.
+ */
+public class LogRecordParser {
+
+	// Variables
+
+	public static final byte EMERGENCY = 0;
+	public static final byte ALERT = 1;
+	public static final byte CRITICAL = 2;
+	public static final byte ERROR = 3;
+	public static final byte WARNING = 4;
+	public static final byte NOTICE = 5;
+	public static final byte INFO = 6;
+	public static final byte DEBUG = 7;
+	public static final byte UNKNOWN = 8;
+
+	/**
+	 * Value of <code>getTime()</code> when a line has no time stamp.
+	 */
+	public static final long NO_TIME = Long.MIN_VALUE;
+
+	/**
+	 * Text that shows up in the log when an application (re)starts, as it loads the frameworks.
+	 */
+	public static final String RESTART_MARKER = "/usr/palm/frameworks";
+
+	private static final String[] LEVEL_NAMES = { "emerg", "panic", "alert", "crit", "err", "error", "warning", "warn", "notice", "info", "debug" };
+	private static final byte[] LEVEL_VALUES = { EMERGENCY, EMERGENCY, ALERT, CRITICAL, ERROR, ERROR, WARNING, WARNING, NOTICE, INFO, DEBUG };
+	private static final String MONTHS = "JanFebMarAprMayJunJulAugSepOctNovDec";
+
+	/**
+	 * Number of words after the time stamp that are looked at for the level and process.
+	 */
+	private static final int MAX_HEADER_WORDS = 4;
+
+	/**
+	 * How far a syslog time stamp may lie in the future before it is taken to be from the year before.
+	 */
+	private static final long MAX_CLOCK_DIFFERENCE = 24 * 60 * 60 * 1000L;
+
+	// current year, and when the next one starts
+	private int year;
+	private long nextYear = Long.MIN_VALUE;
+
+	// fields of the last line
+	private String line;
+	private int position;
+	private long time;
+	private byte level;
+	private int pid;
+	private int processStart;
+	private int processEnd;
+	private int appStart;
+	private int appEnd;
+	private int messageStart;
+	private boolean restart;
+
+	// Constructor
+
+	public LogRecordParser () {
+	}
+
+	// Methods
+
+	/**
+	 * Scans a line, after which its fields can be read with the getters.
+	 *
+	 * @param text A line of the log, without line terminator.
+	 */
+	public void parse(String text) {
+
+		line = text;
+		position = 0;
+		time = NO_TIME;
+		level = UNKNOWN;
+		pid = -1;
+		processStart = processEnd = -1;
+		appStart = appEnd = -1;
+		messageStart = 0;
+
+		skipSpaces();
+		if ( parseIsoTime() || parseSyslogTime() ) {
+			messageStart = position;
+		}
+
+		// [pid]
+		skipSpaces();
+		if ( position < line.length() && line.charAt(position) == '[' ) {
+			int end = line.indexOf(']', position);
+			int value = (end < 0) ? -1 : parseNumber(position + 1, end);
+			if (value >= 0) {
+				pid = value;
+				position = end + 1;
+				messageStart = position;
+			}
+		}
+
+		// host facility.level process: - the words up to the one that ends with a colon
+		// only looked for after a time stamp or process ID, so an ordinary message is not mistaken for them
+		boolean hasHeader = (time != NO_TIME || pid >= 0);
+		for (int words = 0; hasHeader && words < MAX_HEADER_WORDS && processStart < 0; words++) {
+			skipSpaces();
+			int start = position;
+			while ( position < line.length() && line.charAt(position) != ' ' ) {
+				position++;
+			}
+			int end = position;
+			if (start == end) {
+				break;
+			}
+
+			if ( line.charAt(end - 1) == ':' ) {
+				// "Error:" right after the header starts the message, unless the level is known already
+				if ( level == UNKNOWN && findLevel(start, end - 1) != UNKNOWN ) {
+					break;
+				}
+				parseProcess(start, end - 1);
+				messageStart = position;
+			} else if (level == UNKNOWN) {
+				int dot = line.lastIndexOf('.', end - 1);
+				if (dot > start) {
+					level = findLevel(dot + 1, end);
+				}
+			}
+		}
+		position = messageStart;
+
+		// {app.id}: or {"app.id"}:
+		skipSpaces();
+		messageStart = position;
+		if ( position < line.length() && line.charAt(position) == '{' ) {
+			int end = line.indexOf('}', position);
+			if (end > position) {
+				appStart = position + 1;
+				appEnd = end;
+				if ( appEnd - appStart >= 2 && line.charAt(appStart) == '"' && line.charAt(appEnd - 1) == '"' ) {
+					appStart++;
+					appEnd--;
+				}
+				position = end + 1;
+				if ( position < line.length() && line.charAt(position) == ':' ) {
+					position++;
+				}
+				skipSpaces();
+				messageStart = position;
+			}
+		}
+
+		// Mojo messages start with their own level, e.g. "Error: "
+		if (level == UNKNOWN) {
+			int colon = line.indexOf(':', messageStart);
+			if ( colon > messageStart && colon - messageStart <= 7 ) {
+				level = findLevel(messageStart, colon);
+			}
+		}
+
+		restart = line.indexOf(RESTART_MARKER, messageStart) >= 0;
+	}
+
+	/**
+	 * @return Time stamp of the line in milliseconds since 1970, or <code>NO_TIME</code>.
+	 */
+	public long getTime() {
+		return time;
+	}
+
+	/**
+	 * @return Level of the line, from <code>EMERGENCY</code> to <code>DEBUG</code>, or <code>UNKNOWN</code>.
+	 */
+	public byte getLevel() {
+		return level;
+	}
+
+	/**
+	 * @return ID of the process that logged the line, or -1.
+	 */
+	public int getPid() {
+		return pid;
+	}
+
+	/**
+	 * @return Position of the process name in the line, or -1 if there is none.
+	 */
+	public int getProcessStart() {
+		return processStart;
+	}
+
+	public int getProcessEnd() {
+		return processEnd;
+	}
+
+	/**
+	 * @return Position of the application ID in the line, or -1 if there is none.
+	 */
+	public int getAppStart() {
+		return appStart;
+	}
+
+	public int getAppEnd() {
+		return appEnd;
+	}
+
+	/**
+	 * @return Position where the message starts in the line.
+	 */
+	public int getMessageStart() {
+		return messageStart;
+	}
+
+	/**
+	 * @return True if the line shows that an application (re)starts.
+	 */
+	public boolean isRestart() {
+		return restart;
+	}
+
+	/**
+	 * @param level One of the level constants.
+	 * @return Name of the level.
+	 */
+	public static String getLevelName(byte level) {
+		switch (level) {
+			case EMERGENCY: return "emergency";
+			case ALERT:		return "alert";
+			case CRITICAL:	return "critical";
+			case ERROR:		return "error";
+			case WARNING:	return "warning";
+			case NOTICE:	return "notice";
+			case INFO:		return "info";
+			case DEBUG:		return "debug";
+			default:		return "unknown";
+		}
+	}
+
+	// Helper methods
+
+	/**
+	 * Reads <code>yyyy-mm-ddThh:mm:ss[.ffffff][Z|+hh:mm]</code>.
+	 */
+	private boolean parseIsoTime() {
+
+		int p = position;
+		if ( p + 19 > line.length() || line.charAt(p + 4) != '-' || line.charAt(p + 7) != '-'
+			|| line.charAt(p + 10) != 'T' || line.charAt(p + 13) != ':' || line.charAt(p + 16) != ':' ) {
+			return false;
+		}
+		int y = parseNumber(p, p + 4);
+		int mo = parseNumber(p + 5, p + 7);
+		int d = parseNumber(p + 8, p + 10);
+		int h = parseNumber(p + 11, p + 13);
+		int mi = parseNumber(p + 14, p + 16);
+		int s = parseNumber(p + 17, p + 19);
+		if ( (y | mo | d | h | mi | s) < 0 ) {
+			return false;
+		}
+		p += 19;
+
+		// fraction, of which milliseconds are kept
+		int millis = 0;
+		if ( p < line.length() && line.charAt(p) == '.' ) {
+			p++;
+			int digits = 0;
+			while ( p < line.length() && Character.isDigit(line.charAt(p)) ) {
+				if (digits < 3) {
+					millis = millis * 10 + (line.charAt(p) - '0');
+				}
+				digits++;
+				p++;
+			}
+			for (; digits < 3; digits++) {
+				millis *= 10;
+			}
+		}
+
+		long utc = toMillis(y, mo, d, h, mi, s) + millis;
+
+		// time zone
+		if ( p < line.length() && line.charAt(p) == 'Z' ) {
+			p++;
+		} else if ( p + 6 <= line.length() && (line.charAt(p) == '+' || line.charAt(p) == '-') && line.charAt(p + 3) == ':' ) {
+			int offset = parseNumber(p + 1, p + 3) * 60 + parseNumber(p + 4, p + 6);
+			utc -= (line.charAt(p) == '+' ? 1 : -1) * offset * 60000L;
+			p += 6;
+		}
+
+		time = utc;
+		position = p;
+		return true;
+	}
+
+	/**
+	 * Reads <code>Mmm dd hh:mm:ss</code> in local time. The year is missing, so it is taken to be the
+	 * current one, or the one before if that puts the line in the future (a December line read in January).
+	 */
+	private boolean parseSyslogTime() {
+
+		int p = position;
+		if ( p + 15 > line.length() || line.charAt(p + 3) != ' ' || line.charAt(p + 9) != ':' || line.charAt(p + 12) != ':' ) {
+			return false;
+		}
+		int month = -1;
+		for (int i = 0; i < 12; i++) {
+			if ( line.regionMatches(p, MONTHS, i * 3, 3) ) {
+				month = i + 1;
+				break;
+			}
+		}
+		int d = ( line.charAt(p + 4) == ' ' ) ? parseNumber(p + 5, p + 6) : parseNumber(p + 4, p + 6);
+		int h = parseNumber(p + 7, p + 9);
+		int mi = parseNumber(p + 10, p + 12);
+		int s = parseNumber(p + 13, p + 15);
+		if ( (month | d | h | mi | s) < 0 ) {
+			return false;
+		}
+
+		long now = System.currentTimeMillis();
+		if (now >= nextYear) {
+			updateYear(now);
+		}
+		time = toLocalMillis(year, month, d, h, mi, s);
+		if (time > now + MAX_CLOCK_DIFFERENCE) {
+			time = toLocalMillis(year - 1, month, d, h, mi, s);
+		}
+		position = p + 15;
+		return true;
+	}
+
+	private void updateYear(long now) {
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTimeInMillis(now);
+		year = calendar.get(Calendar.YEAR);
+		calendar.clear();
+		calendar.set(year + 1, Calendar.JANUARY, 1);
+		nextYear = calendar.getTimeInMillis();
+	}
+
+	/**
+	 * Reads a process name, which may be followed by its ID: <code>name</code> or <code>name[pid]</code>.
+	 */
+	private void parseProcess(int start, int end) {
+
+		processStart = start;
+		processEnd = end;
+		if ( end > start && line.charAt(end - 1) == ']' ) {
+			int open = line.lastIndexOf('[', end - 1);
+			if (open > start) {
+				int value = parseNumber(open + 1, end - 1);
+				if (value >= 0) {
+					pid = value;
+					processEnd = open;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return The level whose name is at the given part of the line (ignoring case), or <code>UNKNOWN</code>.
+	 */
+	private byte findLevel(int start, int end) {
+		int length = end - start;
+		for (int i = 0; i < LEVEL_NAMES.length; i++) {
+			if ( LEVEL_NAMES[i].length() == length && line.regionMatches(true, start, LEVEL_NAMES[i], 0, length) ) {
+				return LEVEL_VALUES[i];
+			}
+		}
+		return UNKNOWN;
+	}
+
+	/**
+	 * @return The decimal number at the given part of the line, or -1 if it is not a number.
+	 */
+	private int parseNumber(int start, int end) {
+		if (start >= end || end - start > 9) {
+			return -1;
+		}
+		int value = 0;
+		for (int i = start; i < end; i++) {
+			char c = line.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			value = value * 10 + (c - '0');
+		}
+		return value;
+	}
+
+	private void skipSpaces() {
+		while ( position < line.length() && line.charAt(position) == ' ' ) {
+			position++;
+		}
+	}
+
+	/**
+	 * @return Milliseconds since 1970 of a date and time in UTC.
+	 */
+	private static long toMillis(int year, int month, int day, int hour, int minute, int second) {
+
+		// days since 1970-01-01, for the proleptic Gregorian calendar
+		int y = (month <= 2) ? year - 1 : year;
+		int era = (y >= 0 ? y : y - 399) / 400;
+		int yearOfEra = y - era * 400;
+		int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+		int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		long days = era * 146097L + dayOfEra - 719468;
+
+		return ((days * 24 + hour) * 60 + minute) * 60000L + second * 1000L;
+	}
+
+	/**
+	 * @return Milliseconds since 1970 of a date and time in the local time zone.
+	 */
+	private static long toLocalMillis(int year, int month, int day, int hour, int minute, int second) {
+		long local = toMillis(year, month, day, hour, minute, second);
+		return local - TimeZone.getDefault().getOffset(local);
+	}
+}
@@ -0,0 +1,169 @@
+package webosdevtool.logger;
+
+import webosdevtool.DevtoolSettings;
+
+/**
+ * LogScrollback keeps track of the records (lines) shown in a log, so the oldest can be removed
+ * once the log holds more lines or characters than its limits allow.
+ * <br />
+ * Only the length of each record is kept, in a ring; the text itself is kept by the log, e.g. in a
+ * <code>LogRecordBuffer</code> or a Swing document. Adding a record tells how many of the oldest records
+ * the log has to drop. Evicting a record is O(1). To make dropping records rare, the log is trimmed to
+ * 90% of its limits once it exceeds one of them, instead of by one record at a time.
+ * <br />
+ * The limits are taken from the <code>webosdevtool.scrollback.lines</code> and
+ * <code>webosdevtool.scrollback.chars</code> system properties, then from the preferences, and
+ * otherwise the defaults are used. In both places a value of 0 (or none) means the default,
+ * and a negative value means no limit.
+ */
+public class LogScrollback {
+
+	// Variables
+
+	public static final int UNLIMITED = 0;
+	public static final int DEFAULT_LINE_LIMIT = 100000;
+	public static final int DEFAULT_CHAR_LIMIT = 4 * 1024 * 1024;
+
+	private final int lineLimit;
+	private final int charLimit;
+
+	private int[] lengths;
+	private int first;
+	private int count;
+	private long chars;
+
+	// Constructor
+
+	/**
+	 * @param lineLimit Maximum number of records, or <code>UNLIMITED</code>.
+	 * @param charLimit Maximum number of characters of all records together, or <code>UNLIMITED</code>.
+	 */
+	public LogScrollback (int lineLimit, int charLimit) {
+		this.lineLimit = Math.max(UNLIMITED, lineLimit);
+		this.charLimit = Math.max(UNLIMITED, charLimit);
+		this.lengths = new int[ (this.lineLimit == UNLIMITED) ? 1024 : Math.min(1024, this.lineLimit) ];
+		this.first = 0;
+		this.count = 0;
+		this.chars = 0;
+	}
+
+	// Methods
+
+	/**
+	 * @return Scrollback with the limits that are configured, see above.
+	 */
+	public static LogScrollback create() {
+
+		int lines = 0;
+		int chars = 0;
+		try {
+			lines = DevtoolSettings.getPropertyScrollbackLines();
+			chars = DevtoolSettings.getPropertyScrollbackChars();
+		}
+		catch (RuntimeException e) {
+			// preferences could not be read, use the defaults
+		}
+
+		return new LogScrollback( getLimit("webosdevtool.scrollback.lines", lines, DEFAULT_LINE_LIMIT),
+			getLimit("webosdevtool.scrollback.chars", chars, DEFAULT_CHAR_LIMIT) );
+	}
+
+	/**
+	 * @param property Name of the system property that may set the limit.
+	 * @param preference Limit from the preferences.
+	 * @param defaultLimit Limit when neither sets one.
+	 * @return The limit, or <code>UNLIMITED</code>.
+	 */
+	private static int getLimit(String property, int preference, int defaultLimit) {
+
+		int value = Integer.getInteger(property, 0).intValue();
+		if (value == 0) {
+			value = preference;
+		}
+		if (value == 0) {
+			return defaultLimit;
+		}
+		return (value < 0) ? UNLIMITED : value;
+	}
+
+	/**
+	 * Adds a record after the last one, and removes the oldest records if a limit is exceeded.
+	 * The newest record is always kept, even if it exceeds the character limit on its own.
+	 *
+	 * @param length Number of characters of the record, including its line terminator.
+	 * @return Number of records to remove from the start of the log, usually 0.
+	 */
+	public int add(int length) {
+
+		if ( count == lengths.length ) {
+			grow();
+		}
+		lengths[ (first + count) % lengths.length ] = length;
+		count++;
+		chars += length;
+
+		if ( !isOverLimit(lineLimit, charLimit) ) {
+			return 0;
+		}
+
+		// trim to 90% of the limits, so the log is not changed at the start on every addition
+		int lineTarget = lineLimit - lineLimit / 10;
+		int charTarget = charLimit - charLimit / 10;
+		int removed = 0;
+		while ( count > 1 && isOverLimit(lineTarget, charTarget) ) {
+			chars -= lengths[first];
+			first = (first + 1) % lengths.length;
+			count--;
+			removed++;
+		}
+		return removed;
+	}
+
+	/**
+	 * Forgets all records, e.g. when the log is cleared.
+	 */
+	public void clear() {
+		first = 0;
+		count = 0;
+		chars = 0;
+	}
+
+	/**
+	 * @return Number of records in the log.
+	 */
+	public int getLineCount() {
+		return count;
+	}
+
+	/**
+	 * @return Number of characters in the log.
+	 */
+	public long getCharCount() {
+		return chars;
+	}
+
+	/**
+	 * @return True if there are more records or characters than the given limits allow.
+	 */
+	private boolean isOverLimit(int lines, int characters) {
+		return (lineLimit != UNLIMITED && count > lines) || (charLimit != UNLIMITED && chars > characters);
+	}
+
+	/**
+	 * Doubles the ring, but not beyond the line limit.
+	 */
+	private void grow() {
+
+		int size = lengths.length * 2;
+		if (lineLimit != UNLIMITED) {
+			// one more than the limit, as the limit is checked after adding
+			size = Math.min(size, lineLimit + 1);
+		}
+		int[] grown = new int[size];
+		for (int i = 0; i < count; i++) {
+			grown[i] = lengths[ (first + i) % lengths.length ];
+		}
+		lengths = grown;
+		first = 0;
+	}
+}
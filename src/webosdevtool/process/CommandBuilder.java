@@ -0,0 +1,94 @@
+package webosdevtool.process;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A CommandBuilder puts together a command-line instruction for <code>TaskHandler</code>.
+ * Nearly all commands start the same way (the shell, followed by one of the SDK tools), so the builder
+ * takes care of that part, after which each command only adds its own arguments.
+ * <br />
+ * Example: <code>CommandBuilder.sdk("palm-install").device(id).arg(packagePath).build()</code>
+ */
+public class CommandBuilder {
+
+	// Variables
+
+	/**
+	 * Shell that runs the SDK tools (these are shell scripts).
+	 */
+	public static final String SHELL = "/bin/bash";
+
+	private List<String> commands;
+
+	// Constructor
+
+	/**
+	 * @param program Program to run, e.g. the shell.
+	 */
+	private CommandBuilder (String program) {
+		this.commands = new ArrayList<String>(6);
+		this.commands.add(program);
+	}
+
+	// Methods
+
+	/**
+	 * @param tool Name of an SDK tool, e.g. <code>palm-launch</code>.
+	 * @return Builder for a command that runs the tool, as found by <code>ToolResolver</code>.
+	 */
+	public static CommandBuilder sdk(String tool) {
+
+		String path = ToolResolver.resolve(tool);
+		if ( ToolResolver.isInSDK(path) ) {
+			return shell(path);
+		}
+		// found elsewhere, e.g. on the PATH, which need not be a shell script
+		return program(path);
+	}
+
+	/**
+	 * @param path Path of an executable program.
+	 * @return Builder for a command that runs the program directly.
+	 */
+	public static CommandBuilder program(String path) {
+		return new CommandBuilder(path);
+	}
+
+	/**
+	 * @param script Path of a script or program to run with the shell.
+	 * @return Builder for a command that runs the script.
+	 */
+	public static CommandBuilder shell(String script) {
+
+		return new CommandBuilder(SHELL).arg(script);
+	}
+
+	/**
+	 * Adds an argument.
+	 *
+	 * @return This builder.
+	 */
+	public CommandBuilder arg(String argument) {
+		commands.add(argument);
+		return this;
+	}
+
+	/**
+	 * Adds the argument that selects the device a tool works with.
+	 *
+	 * @param deviceID ID of the device.
+	 * @return This builder.
+	 */
+	public CommandBuilder device(String deviceID) {
+		commands.add("--device=" + deviceID);
+		return this;
+	}
+
+	/**
+	 * @return The command, which can be passed to <code>TaskHandler.execute()</code>. The builder should not be used afterwards.
+	 */
+	public List<String> build() {
+		return commands;
+	}
+}
@@ -0,0 +1,79 @@
+package webosdevtool.process;
+
+/**
+ * Timing and result of a single command-line process that ran on behalf of a task.
+ * Times are <code>System.nanoTime()</code> values, which are only meaningful relative to each other.
+ */
+public class CommandRecord {
+
+	// Variables
+
+	private final String name;
+	private final long startedAt;
+	private final long spawnedAt;
+	private final long finishedAt;
+	private final int exitCode;
+	private final long outputBytes;
+
+	// Constructor
+
+	/**
+	 * @param name Short name of the command, e.g. <code>palm-install</code>.
+	 * @param startedAt Moment the process was requested.
+	 * @param spawnedAt Moment the process was running.
+	 * @param finishedAt Moment the process had finished and its output was read.
+	 * @param exitCode Exit value of the process.
+	 * @param outputBytes Size of the output on stdout and stderr combined.
+	 */
+	public CommandRecord (String name, long startedAt, long spawnedAt, long finishedAt, int exitCode, long outputBytes) {
+		this.name = name;
+		this.startedAt = startedAt;
+		this.spawnedAt = spawnedAt;
+		this.finishedAt = finishedAt;
+		this.exitCode = exitCode;
+		this.outputBytes = outputBytes;
+	}
+
+	// Methods
+
+	/**
+	 * @return Short name of the command.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	public long getStartedAt() {
+		return startedAt;
+	}
+
+	public long getSpawnedAt() {
+		return spawnedAt;
+	}
+
+	public long getFinishedAt() {
+		return finishedAt;
+	}
+
+	/**
+	 * @return Time in nanoseconds it took to start the process.
+	 */
+	public long getSpawnTime() {
+		return spawnedAt - startedAt;
+	}
+
+	/**
+	 * @return Time in nanoseconds the process ran, from being started until it finished.
+	 */
+	public long getRunTime() {
+		return finishedAt - spawnedAt;
+	}
+
+	public int getExitCode() {
+		return exitCode;
+	}
+
+	public long getOutputBytes() {
+		return outputBytes;
+	}
+}
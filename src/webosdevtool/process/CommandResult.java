@@ -0,0 +1,158 @@
+package webosdevtool.process;
+
+import devdaily.OutputCapture;
+
+/**
+ * A CommandResult holds the outcome of one executed command: its exit value, its output and
+ * error output, how long it took, and whether its task timed out meanwhile.
+ * <br />
+ * Output is usually kept as the raw bytes that were read, and only decoded to text when it is
+ * asked for. Most commands are only checked for their exit value, so their output is never decoded.
+ * <br />
+ * Results are meant to be used by the thread that executed the command.
+ */
+public class CommandResult {
+
+	// Variables
+
+	/**
+	 * Exit value used when a command could not be run or did not finish normally.
+	 */
+	public static final int FAILED = 2;
+
+	private static final byte[] NO_BYTES = new byte[0];
+
+	private int exitValue;
+	private byte[] outputBytes;
+	private int outputLength;
+	private byte[] errorBytes;
+	private int errorLength;
+	private String output;
+	private String error;
+	private long duration;
+	private boolean timedOut;
+	private boolean truncated;
+
+	// Constructors
+
+	/**
+	 * Creates a result from raw output. The arrays are used as they are, not copied.
+	 *
+	 * @param exitValue Exit value of the command, 0 means successful completion.
+	 * @param outputBytes Standard output, of which the first <code>outputLength</code> bytes are valid.
+	 * @param outputLength Number of valid bytes of standard output.
+	 * @param errorBytes Error output, of which the first <code>errorLength</code> bytes are valid.
+	 * @param errorLength Number of valid bytes of error output.
+	 * @param duration Time the command took in nanoseconds.
+	 * @param timedOut True if the task of the command timed out.
+	 * @param truncated True if part of the output was not kept.
+	 */
+	public CommandResult (int exitValue, byte[] outputBytes, int outputLength, byte[] errorBytes, int errorLength,
+		long duration, boolean timedOut, boolean truncated) {
+
+		this.exitValue = exitValue;
+		this.outputBytes = outputBytes;
+		this.outputLength = outputLength;
+		this.errorBytes = errorBytes;
+		this.errorLength = errorLength;
+		this.duration = duration;
+		this.timedOut = timedOut;
+		this.truncated = truncated;
+	}
+
+	/**
+	 * Creates a result from output that is text already.
+	 */
+	public CommandResult (int exitValue, String output, String error, long duration, boolean timedOut, boolean truncated) {
+		this(exitValue, NO_BYTES, 0, NO_BYTES, 0, duration, timedOut, truncated);
+		this.output = (output == null) ? "" : output;
+		this.error = (error == null) ? "" : error;
+		this.outputLength = this.output.length();
+		this.errorLength = this.error.length();
+	}
+
+	// Methods
+
+	/**
+	 * @param error Explanation of why the command did not run.
+	 * @return Result of a command that was not run at all.
+	 */
+	public static CommandResult failed(String error) {
+		return new CommandResult(FAILED, "", error, 0, false, false);
+	}
+
+	/**
+	 * @return Exit value of the command, 0 means successful completion.
+	 */
+	public int getExitValue() {
+		return exitValue;
+	}
+
+	/**
+	 * @return True if the command exited with 0.
+	 */
+	public boolean isSuccessful() {
+		return exitValue == 0;
+	}
+
+	/**
+	 * @return Standard output of the command, decoded on first use.
+	 */
+	public String getOutput() {
+		if (output == null) {
+			output = new String(outputBytes, 0, outputLength, OutputCapture.CHARSET);
+			outputBytes = NO_BYTES;
+		}
+		return output;
+	}
+
+	/**
+	 * @return Error output of the command, decoded on first use.
+	 */
+	public String getError() {
+		if (error == null) {
+			error = new String(errorBytes, 0, errorLength, OutputCapture.CHARSET);
+			errorBytes = NO_BYTES;
+		}
+		return error;
+	}
+
+	/**
+	 * @return True if the command wrote anything to its error output.
+	 */
+	public boolean hasError() {
+		return errorLength > 0;
+	}
+
+	/**
+	 * @return Size of the kept output and error output together, without decoding them.
+	 */
+	public long getSize() {
+		return outputLength + errorLength;
+	}
+
+	/**
+	 * @return Time the command took in nanoseconds.
+	 */
+	public long getDuration() {
+		return duration;
+	}
+
+	/**
+	 * @return True if the task of the command timed out, in which case the command was stopped.
+	 */
+	public boolean isTimedOut() {
+		return timedOut;
+	}
+
+	/**
+	 * @return True if part of the output was not kept.
+	 */
+	public boolean isTruncated() {
+		return truncated;
+	}
+
+	public String toString() {
+		return "CommandResult[exit " + exitValue + (timedOut ? ", timed out" : "") + (truncated ? ", truncated" : "") + "]";
+	}
+}
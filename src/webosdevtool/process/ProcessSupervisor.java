@@ -0,0 +1,426 @@
+package webosdevtool.process;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ProcessSupervisor keeps track of every process Devtool starts, and of the processes those start in turn,
+ * so none of them keeps running once it is no longer wanted.
+ * <br />
+ * Descendants are looked up <code>REFRESH_INTERVAL</code> after a process is registered. This matters
+ * because a shell script that exits (or is destroyed) leaves its children to the init process, after which
+ * they can no longer be found from the script. Descendants that were seen before remain tracked until they
+ * have exited. While the descendants of all processes stay the same, the time between look-ups doubles up to
+ * <code>MAX_REFRESH_INTERVAL</code>, so a long-running <code>palm-log -f</code> does not cost a
+ * <code>ps</code> every few seconds. Stopping a process looks its descendants up again anyway.
+ * (Descendants of a process that exits before they are looked up cannot be found this way.)
+ * <br />
+ * Stopping a process first asks it and its descendants to terminate (<code>TERM</code>), and kills
+ * (<code>KILL</code>) whatever is still running after <code>GRACE_PERIOD</code>. This way e.g. a
+ * <code>palm-log -f</code> does not keep a novacom channel busy after Devtool quits.
+ * <br />
+ * Descendants are known by their process ID together with their start time, as an ID may be reused
+ * by an unrelated process once the descendant has exited. Only processes whose start time still matches
+ * are signalled. All look-ups run on the supervisor's own thread, so stopping a process never makes
+ * the caller (e.g. the event dispatch thread) wait for <code>ps</code>.
+ */
+public class ProcessSupervisor {
+
+	// Variables
+
+	/**
+	 * Time in milliseconds processes get to terminate before they are killed.
+	 */
+	public static final long GRACE_PERIOD = 2000;
+
+	/**
+	 * Time in milliseconds between look-ups of the descendants of supervised processes.
+	 */
+	public static final long REFRESH_INTERVAL = 3000;
+
+	/**
+	 * Longest time in milliseconds between look-ups, reached while no descendants come or go.
+	 */
+	public static final long MAX_REFRESH_INTERVAL = 60000;
+
+	private static final Map<Process, Child> children = new ConcurrentHashMap<Process, Child>();
+	private static ScheduledThreadPoolExecutor timer = null;
+	private static ScheduledFuture<?> nextRefresh = null;
+	private static long refreshInterval = REFRESH_INTERVAL;
+
+	// Constructor
+
+	/**
+	 * Empty constructor as all methods are static.
+	 */
+	private ProcessSupervisor () {}
+
+	// Methods
+
+	/**
+	 * Starts supervising a process. Registered processes are stopped by <code>terminateAll()</code>,
+	 * which also runs when the JVM exits.
+	 *
+	 * @param process Process that was just started.
+	 * @param name Name of the process, used for feedback only.
+	 */
+	public static void register(Process process, String name) {
+
+		if (process == null) {
+			return;
+		}
+		children.put( process, new Child(process, name) );
+
+		// a new process is looked up soon, whatever the interval had grown to
+		synchronized (ProcessSupervisor.class) {
+			refreshInterval = REFRESH_INTERVAL;
+		}
+		scheduleRefresh(REFRESH_INTERVAL);
+	}
+
+	/**
+	 * Stops a process and its descendants without waiting for them: they are asked to terminate right away
+	 * on the supervisor's thread, and killed after <code>GRACE_PERIOD</code> if they are still running by then.
+	 *
+	 * @param process Process to stop, does not need to be registered.
+	 */
+	public static void terminate(final Process process) {
+
+		if (process == null) {
+			return;
+		}
+
+		startTimer().execute(new Runnable() {
+			public void run() {
+				stop(process);
+			}
+		});
+	}
+
+	/**
+	 * Stops all supervised processes and their descendants, and waits until they are gone.
+	 * Whatever still runs after the timeout is killed.
+	 *
+	 * @param timeout Time in milliseconds processes get to terminate before they are killed.
+	 */
+	public static void terminateAll(long timeout) {
+
+		List<Child> snapshot = new ArrayList<Child>( children.values() );
+		if ( snapshot.isEmpty() ) {
+			return;
+		}
+
+		// collect everything first, the tree falls apart once parents are gone
+		Map<Integer, String> startTimes = new HashMap<Integer, String>();
+		Map<Integer, Integer> parents = ProcessTree.getParents(startTimes);
+		Map<Integer, String> pids = new LinkedHashMap<Integer, String>();
+		StringBuilder names = new StringBuilder();
+		for (int i = 0; i < snapshot.size(); i++) {
+			Child child = snapshot.get(i);
+			child.refresh(parents, startTimes);
+			pids.putAll( child.getKnownDescendants() );
+			names.append(i == 0 ? "" : ", ").append(child.name);
+		}
+
+		System.out.println("Stopping " + names + " and " + pids.size() + " process(es) started by them.");
+
+		for (int i = 0; i < snapshot.size(); i++) {
+			snapshot.get(i).process.destroy();
+		}
+		ProcessTree.signal( new ArrayList<Integer>( pids.keySet() ), "TERM");
+
+		// wait for them to go
+		long deadline = System.currentTimeMillis() + timeout;
+		while ( System.currentTimeMillis() < deadline ) {
+			startTimes = new HashMap<Integer, String>();
+			if ( !anyRunning(snapshot, pids, ProcessTree.getParents(startTimes) == null ? null : startTimes) ) {
+				break;
+			}
+			try {
+				Thread.sleep(100);
+			}
+			catch (InterruptedException ie) {
+				break;
+			}
+		}
+
+		// and force those that did not
+		startTimes = new HashMap<Integer, String>();
+		if ( ProcessTree.getParents(startTimes) == null ) {
+			startTimes = null;
+		}
+		for (int i = 0; i < snapshot.size(); i++) {
+			kill(snapshot.get(i).process, new HashMap<Integer, String>(), startTimes);
+			children.remove( snapshot.get(i).process );
+		}
+		kill(null, pids, startTimes);
+	}
+
+	/**
+	 * @return Number of supervised processes that are still running or left descendants running.
+	 */
+	public static int getCount() {
+		return children.size();
+	}
+
+	// Helper methods
+
+	/**
+	 * Looks up the descendants of all supervised processes, and stops supervising those that are gone entirely.
+	 * Schedules the next look-up, later than this one if nothing changed.
+	 */
+	private static void refresh() {
+
+		synchronized (ProcessSupervisor.class) {
+			nextRefresh = null;
+		}
+		if ( children.isEmpty() ) {
+			// the next registration schedules a look-up again
+			return;
+		}
+
+		boolean stable = true;
+		Map<Integer, String> startTimes = new HashMap<Integer, String>();
+		Map<Integer, Integer> parents = ProcessTree.getParents(startTimes);
+		if (parents != null) {
+			List<Child> snapshot = new ArrayList<Child>( children.values() );
+			for (int i = 0; i < snapshot.size(); i++) {
+				Child child = snapshot.get(i);
+				if ( !child.refresh(parents, startTimes) ) {
+					children.remove(child.process);
+					stable = false;
+				} else if ( child.hasChanged() ) {
+					stable = false;
+				}
+			}
+		}
+
+		synchronized (ProcessSupervisor.class) {
+			refreshInterval = stable ? Math.min(refreshInterval * 2, MAX_REFRESH_INTERVAL) : REFRESH_INTERVAL;
+		}
+		if ( !children.isEmpty() ) {
+			scheduleRefresh(refreshInterval);
+		}
+	}
+
+	/**
+	 * Makes sure the next look-up of descendants happens within the given delay.
+	 *
+	 * @param delay Time in milliseconds.
+	 */
+	private static synchronized void scheduleRefresh(long delay) {
+
+		if ( nextRefresh != null && nextRefresh.getDelay(TimeUnit.MILLISECONDS) <= delay ) {
+			return;
+		}
+		if (nextRefresh != null) {
+			nextRefresh.cancel(false);
+		}
+		nextRefresh = startTimer().schedule(new Runnable() {
+			public void run() {
+				refresh();
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops a process and its descendants, see <code>terminate()</code>. Runs on the supervisor's thread.
+	 */
+	private static void stop(final Process process) {
+
+		// descendants are looked up before the process is destroyed, as they are adopted by init afterwards
+		Map<Integer, String> startTimes = new HashMap<Integer, String>();
+		Map<Integer, Integer> parents = ProcessTree.getParents(startTimes);
+		final Map<Integer, String> pids = new LinkedHashMap<Integer, String>();
+		Child child = children.get(process);
+		if (child != null) {
+			// including those that were orphaned earlier
+			child.refresh(parents, startTimes);
+			pids.putAll( child.getKnownDescendants() );
+		} else if (parents != null) {
+			List<Integer> found = ProcessTree.getDescendants( ProcessTree.getPid(process), parents );
+			for (int i = 0; i < found.size(); i++) {
+				pids.put( found.get(i), startTimes.get(found.get(i)) );
+			}
+		}
+
+		process.destroy();
+		ProcessTree.signal( new ArrayList<Integer>( pids.keySet() ), "TERM");
+
+		startTimer().schedule(new Runnable() {
+			public void run() {
+				Map<Integer, String> startTimes = new HashMap<Integer, String>();
+				kill(process, pids, ProcessTree.getParents(startTimes) == null ? null : startTimes);
+			}
+		}, GRACE_PERIOD, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Kills a process and those of the given descendants that are still running.
+	 * A descendant whose ID now belongs to another process (it started at another time) is left alone.
+	 *
+	 * @param process Process to kill, may be <code>null</code>.
+	 * @param pids IDs of descendants with their start times.
+	 * @param startTimes Start times of the processes running now, from <code>ProcessTree.getParents()</code>.
+	 * May be <code>null</code> if they could not be looked up, in which case no descendants are killed.
+	 */
+	private static void kill(Process process, Map<Integer, String> pids, Map<Integer, String> startTimes) {
+
+		List<Integer> survivors = new ArrayList<Integer>();
+		if ( process != null && isAlive(process) ) {
+			int pid = ProcessTree.getPid(process);
+			if (pid > 0) {
+				survivors.add( Integer.valueOf(pid) );
+			}
+		}
+		for (Map.Entry<Integer, String> entry : pids.entrySet()) {
+			if ( isSameProcess(entry, startTimes) ) {
+				survivors.add( entry.getKey() );
+			}
+		}
+
+		if ( !survivors.isEmpty() ) {
+			System.out.println("Killing " + survivors.size() + " process(es) that did not terminate in time.");
+			ProcessTree.signal(survivors, "KILL");
+		}
+	}
+
+	/**
+	 * @return True if any of the processes or descendants still runs.
+	 */
+	private static boolean anyRunning(List<Child> snapshot, Map<Integer, String> pids, Map<Integer, String> startTimes) {
+
+		for (int i = 0; i < snapshot.size(); i++) {
+			if ( isAlive(snapshot.get(i).process) ) {
+				return true;
+			}
+		}
+		for (Map.Entry<Integer, String> entry : pids.entrySet()) {
+			if ( isSameProcess(entry, startTimes) ) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param pid Process ID with the start time it had when it was found.
+	 * @param startTimes Start times of the processes running now, may be <code>null</code>.
+	 * @return True if the process still runs, and its ID was not taken over by another process.
+	 */
+	private static boolean isSameProcess(Map.Entry<Integer, String> pid, Map<Integer, String> startTimes) {
+		return startTimes != null && pid.getValue() != null && pid.getValue().equals( startTimes.get(pid.getKey()) );
+	}
+
+	/**
+	 * @return True if the process has not exited yet.
+	 */
+	private static boolean isAlive(Process process) {
+		try {
+			process.exitValue();
+			return false;
+		}
+		catch (IllegalThreadStateException e) {
+			return true;
+		}
+	}
+
+	/**
+	 * Starts the thread that looks up and stops processes, along with a hook that stops all processes when the JVM exits.
+	 *
+	 * @return The timer.
+	 */
+	private static synchronized ScheduledThreadPoolExecutor startTimer() {
+
+		if (timer == null) {
+			timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "ProcessSupervisor");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+
+			Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+				public void run() {
+					terminateAll(GRACE_PERIOD);
+				}
+			}, "ProcessSupervisor shutdown"));
+		}
+		return timer;
+	}
+
+	// Inner classes
+
+	/**
+	 * A supervised process with the descendants it is known to have had, by ID and start time.
+	 */
+	private static class Child {
+
+		private final Process process;
+		private final String name;
+		private final int pid;
+		private Map<Integer, String> descendants;
+		private boolean changed;
+
+		Child (Process process, String name) {
+			this.process = process;
+			this.name = name;
+			this.pid = ProcessTree.getPid(process);
+			this.descendants = new LinkedHashMap<Integer, String>();
+		}
+
+		/**
+		 * Updates the known descendants: new ones are added, those that exited are dropped.
+		 *
+		 * @param parents Current process table, may be <code>null</code>.
+		 * @param startTimes Start times that belong to the process table.
+		 * @return False if the process and all of its descendants are gone.
+		 */
+		synchronized boolean refresh(Map<Integer, Integer> parents, Map<Integer, String> startTimes) {
+
+			if (parents == null) {
+				return true;
+			}
+
+			Map<Integer, String> current = new LinkedHashMap<Integer, String>();
+			if ( isAlive(process) ) {
+				List<Integer> found = ProcessTree.getDescendants(pid, parents);
+				for (int i = 0; i < found.size(); i++) {
+					current.put( found.get(i), startTimes.get(found.get(i)) );
+				}
+			}
+			// orphans are kept as long as they run, and their ID was not reused
+			for (Map.Entry<Integer, String> known : descendants.entrySet()) {
+				if ( isSameProcess(known, startTimes) && !current.containsKey(known.getKey()) ) {
+					current.put( known.getKey(), known.getValue() );
+				}
+			}
+			if ( !isAlive(process) && current.isEmpty() ) {
+				return false;
+			}
+			changed = !current.equals(descendants);
+			descendants = current;
+			return true;
+		}
+
+		/**
+		 * @return True if the last refresh found other descendants than the one before.
+		 */
+		synchronized boolean hasChanged() {
+			return changed;
+		}
+
+		synchronized Map<Integer, String> getKnownDescendants() {
+			return new LinkedHashMap<Integer, String>(descendants);
+		}
+	}
+}
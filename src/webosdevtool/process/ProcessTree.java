@@ -0,0 +1,207 @@
+package webosdevtool.process;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class helps to terminate a process including any processes it started itself.
+ * Most SDK commands are shell scripts (e.g. <code>palm-install</code>) that start other programs,
+ * so destroying just the <code>Process</code> would leave those running.
+ * <br />
+ * Java offers no access to process IDs or child processes, thus this class falls back
+ * on the <code>ps</code> and <code>kill</code> commands which are available on OS X and Linux.
+ */
+public class ProcessTree {
+
+	// Constructor
+
+	/**
+	 * Empty constructor as all methods are static.
+	 */
+	private ProcessTree () {}
+
+	// Methods
+
+	/**
+	 * Method tries to find the operating system process ID of a process.
+	 * Newer Java versions offer a <code>pid()</code> method, older ones keep it in a private field.
+	 *
+	 * @param process The process to get the ID for.
+	 * @return Process ID, or -1 if it could not be determined.
+	 */
+	public static int getPid(Process process) {
+
+		if (process == null) {
+			return -1;
+		}
+
+		// Java 9+
+		try {
+			Method pidMethod = Process.class.getMethod("pid");
+			return ((Number) pidMethod.invoke(process)).intValue();
+		}
+		catch (Exception e) {}
+
+		// older Java versions on OS X and Linux (java.lang.UNIXProcess)
+		try {
+			Field pidField = process.getClass().getDeclaredField("pid");
+			pidField.setAccessible(true);
+			return pidField.getInt(process);
+		}
+		catch (Exception e) {}
+
+		return -1;
+	}
+
+	/**
+	 * Method returns the parent of every process that runs at the moment, using a single <code>ps</code> call.
+	 *
+	 * @return Map of process ID to parent process ID, or <code>null</code> if <code>ps</code> could not be run.
+	 */
+	public static Map<Integer, Integer> getParents() {
+		return getParents(null);
+	}
+	
+	/**
+	 * Method returns the parent of every process that runs at the moment, and optionally when each process started.
+	 * A process ID may be reused once its process has exited; the start time tells whether an ID still belongs
+	 * to the same process.
+	 *
+	 * @param startTimes Map that is filled with process ID to start time (as text), may be <code>null</code>.
+	 * @return Map of process ID to parent process ID, or <code>null</code> if <code>ps</code> could not be run.
+	 */
+	public static Map<Integer, Integer> getParents(Map<Integer, String> startTimes) {
+
+		List<String> commands = new ArrayList<String>();
+		commands.add("ps");
+		commands.add("-A");
+		commands.add("-o");
+		commands.add("pid=");
+		commands.add("-o");
+		commands.add("ppid=");
+		commands.add("-o");
+		commands.add("lstart=");
+
+		String output = runQuietly(commands);
+		if (output.length() == 0) {
+			return null;
+		}
+
+		Map<Integer, Integer> parents = new HashMap<Integer, Integer>();
+		String[] lines = output.split("\n");
+		for (int i = 0; i < lines.length; i++) {
+			// pid ppid start, of which the start contains spaces itself
+			String[] fields = lines[i].trim().split("\\s+", 3);
+			if (fields.length < 3) {
+				continue;
+			}
+			try {
+				Integer pid = Integer.valueOf(fields[0]);
+				parents.put( pid, Integer.valueOf(fields[1]) );
+				if (startTimes != null) {
+					startTimes.put(pid, fields[2]);
+				}
+			}
+			catch (java.lang.NumberFormatException nfe) {
+				// not a process line
+			}
+		}
+		return parents;
+	}
+
+	/**
+	 * Method returns the IDs of all descendants of a process, based on a table from <code>getParents()</code>.
+	 *
+	 * @param pid Process ID of the parent process.
+	 * @param parents Map of process ID to parent process ID.
+	 * @return List of process IDs, parents before their children.
+	 */
+	public static List<Integer> getDescendants(int pid, Map<Integer, Integer> parents) {
+
+		List<Integer> descendants = new ArrayList<Integer>();
+
+		if (pid <= 0 || parents == null) {
+			return descendants;
+		}
+
+		// each round adds the children of the processes found in the round before
+		descendants.add( Integer.valueOf(pid) );
+		for (int i = 0; i < descendants.size(); i++) {
+			Integer parent = descendants.get(i);
+			for (Map.Entry<Integer, Integer> entry : parents.entrySet()) {
+				if ( entry.getValue().equals(parent) && !descendants.contains(entry.getKey()) ) {
+					descendants.add( entry.getKey() );
+				}
+			}
+		}
+		descendants.remove(0);
+
+		return descendants;
+	}
+
+	/**
+	 * Method sends a signal to a list of processes.
+	 *
+	 * @param pids Process IDs to signal.
+	 * @param signal Signal name, such as <code>TERM</code> or <code>KILL</code>.
+	 */
+	public static void signal(List<Integer> pids, String signal) {
+
+		if (pids == null || pids.isEmpty()) {
+			return;
+		}
+
+		List<String> commands = new ArrayList<String>();
+		commands.add("kill");
+		commands.add("-" + signal);
+		for (int i = 0; i < pids.size(); i++) {
+			commands.add( String.valueOf(pids.get(i)) );
+		}
+
+		runQuietly(commands);
+	}
+
+	// Helper methods
+
+	/**
+	 * Runs a short command and returns its output. Any failure results in empty output.
+	 */
+	private static String runQuietly(List<String> commands) {
+
+		StringBuilder output = new StringBuilder();
+
+		try {
+			ProcessBuilder pb = new ProcessBuilder(commands);
+			pb.redirectErrorStream(true);
+			Process p = pb.start();
+
+			BufferedReader reader = new BufferedReader(new InputStreamReader( p.getInputStream() ));
+			try {
+				String line = null;
+				while ( (line = reader.readLine()) != null) {
+					output.append(line).append('\n');
+				}
+			}
+			finally {
+				reader.close();
+			}
+			p.waitFor();
+		}
+		catch (java.io.IOException ioe) {
+			System.out.println("ProcessTree: could not run " + commands.get(0) + ": " + ioe);
+		}
+		catch (java.lang.InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+
+		return output.toString();
+	}
+}
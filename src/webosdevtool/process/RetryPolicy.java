@@ -0,0 +1,103 @@
+package webosdevtool.process;
+
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * A RetryPolicy decides whether a failed task is worth another attempt and how long to wait before it.
+ * Only failures of which the error output matches the retryable pattern are retried, such as
+ * novacom losing the connection while a USB device reconnects. Other failures (e.g. a broken package)
+ * would fail again, so they are reported right away.
+ * <br />
+ * The delay grows exponentially with each attempt, up to a maximum, and is randomised a bit (jitter)
+ * so tasks for several devices do not all retry at the same moment.
+ */
+public class RetryPolicy {
+
+	// Variables
+
+	/**
+	 * Error output that is typical for a device connection that is temporarily unavailable.
+	 */
+	public static final Pattern TRANSIENT_DEVICE_ERRORS = Pattern.compile(
+		"unable to (connect|find|open)|could not connect|connection (refused|reset|closed|lost)"
+		+ "|device not found|no devices? (found|available)|novacom.*(error|fail)|timed out|broken pipe",
+		Pattern.CASE_INSENSITIVE);
+
+	private static final Random random = new Random();
+
+	private int maxAttempts;
+	private long baseDelay;
+	private long maxDelay;
+	private double jitter;
+	private Pattern retryable;
+
+	// Constructors
+
+	/**
+	 * @param maxAttempts Total number of attempts, including the first one.
+	 * @param baseDelay Delay before the second attempt in milliseconds. Each next attempt waits twice as long.
+	 * @param maxDelay Maximum delay in milliseconds.
+	 * @param jitter Fraction (0 to 1) by which a delay is randomly shortened.
+	 * @param retryable Error output that indicates a failure is worth retrying, <code>null</code> to retry any failure.
+	 */
+	public RetryPolicy (int maxAttempts, long baseDelay, long maxDelay, double jitter, Pattern retryable) {
+		this.maxAttempts = Math.max(1, maxAttempts);
+		this.baseDelay = Math.max(0, baseDelay);
+		this.maxDelay = Math.max(this.baseDelay, maxDelay);
+		this.jitter = Math.min(1, Math.max(0, jitter));
+		this.retryable = retryable;
+	}
+
+	/**
+	 * Creates a policy for transient device errors, with up to half of each delay as jitter.
+	 */
+	public RetryPolicy (int maxAttempts, long baseDelay, long maxDelay) {
+		this(maxAttempts, baseDelay, maxDelay, 0.5, TRANSIENT_DEVICE_ERRORS);
+	}
+
+	// Methods
+
+	/**
+	 * @return Total number of attempts, including the first one.
+	 */
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	/**
+	 * @param attempt Number of the attempt that just failed, starting at 1.
+	 * @param errorOutput Error output of the failed attempt, may be <code>null</code>.
+	 * @return True if another attempt should be made.
+	 */
+	public boolean shouldRetry(int attempt, String errorOutput) {
+
+		if (attempt >= maxAttempts) {
+			return false;
+		}
+		if (retryable == null) {
+			return true;
+		}
+		return errorOutput != null && retryable.matcher(errorOutput).find();
+	}
+
+	/**
+	 * @param attempt Number of the attempt that just failed, starting at 1.
+	 * @return Delay in milliseconds before the next attempt.
+	 */
+	public long getDelay(int attempt) {
+
+		// base * 2^(attempt - 1), without overflowing
+		long delay = baseDelay;
+		for (int i = 1; i < attempt && delay < maxDelay; i++) {
+			delay *= 2;
+		}
+		delay = Math.min(delay, maxDelay);
+
+		double factor;
+		synchronized (random) {
+			factor = 1 - jitter * random.nextDouble();
+		}
+		return (long) (delay * factor);
+	}
+}
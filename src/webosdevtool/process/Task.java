@@ -3,9 +3,33 @@ package webosdevtool.process;
 import webosdevtool.DevSourceItem;
 import webosdevtool.Device;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Task object can be regarded as an order sheet for the TaskHandler.
  * It signals which process should be performed on which project and device.
+ * <br />
+ * A task may be cancelled at any time. If it is running at that moment its command-line process
+ * (and any processes started by it) is destroyed. Each task type can have a timeout, after which
+ * the task is cancelled automatically and marked as timed out.
+ * <br />
+ * Task types can have a <code>RetryPolicy</code>. A failed attempt of such a task is tried again after a delay
+ * if its error output suggests a transient problem, such as a device that is reconnecting.
+ * <br />
+ * Tasks can declare other tasks as prerequisites, which together form a graph of tasks.
+ * The TaskManager only starts a task once all of its prerequisites completed successfully.
+ * If a prerequisite fails, the task and anything depending on it are skipped.
+ * <br />
+ * For metrics, a task records when it was added, started and finished (as <code>System.nanoTime()</code> values),
+ * how many tasks were waiting when it was added, and the timing and exit code of each command it ran.
+ * <br />
+ * Tasks are interactive by default. Background tasks are processed after interactive tasks
+ * that were added up to a few seconds later.
  */
 public class Task {
 	
@@ -18,7 +42,6 @@ public class Task {
 	public static final int PROJECT_LAUNCH = 5;
 	public static final int PROJECT_CLOSE = 7;
 	public static final int PROJECT_UNINSTALL = 8;
-	public static final int PROJECT_RUN = 9;
 	public static final int PROJECT_NEW = 11;
 	public static final int PROJECT_NEW_SCENE = 12;
 	public static final int PROJECT_OPEN_LOGGER = 13;
@@ -36,16 +59,74 @@ public class Task {
 	public static final int DEVICE_LIST_APPS = 36;
 	public static final int DEVICE_LOG_LEVEL = 37;
 	
+	/**
+	 * Priority for tasks started by the user, which are processed first.
+	 */
+	public static final int PRIORITY_INTERACTIVE = 0;
+	
+	/**
+	 * Priority for maintenance tasks, such as refreshing the apps installed on a device after a scan.
+	 * These give way to interactive tasks, but only for a limited time so they are never starved.
+	 */
+	public static final int PRIORITY_BACKGROUND = 1;
+	
+	/**
+	 * Timeouts in milliseconds per task type. Types without an entry never time out.
+	 */
+	private static final Map<Integer, Long> timeouts = new HashMap<Integer, Long>();
+	
+	/**
+	 * Retry policies per task type. Types without an entry are never retried.
+	 */
+	private static final Map<Integer, RetryPolicy> retryPolicies = new HashMap<Integer, RetryPolicy>();
+	
+	static {
+		setTimeout(PROJECT_NEW, 60 * 1000L);
+		setTimeout(PROJECT_NEW_SCENE, 60 * 1000L);
+		setTimeout(PROJECT_DEPLOY, 5 * 60 * 1000L);
+		setTimeout(PROJECT_PACKAGE, 2 * 60 * 1000L);
+		setTimeout(PROJECT_INSTALL, 2 * 60 * 1000L);
+		setTimeout(PROJECT_LAUNCH, 30 * 1000L);
+		setTimeout(PROJECT_CLOSE, 30 * 1000L);
+		setTimeout(PROJECT_UNINSTALL, 60 * 1000L);
+		setTimeout(DEVICE_SCAN, 20 * 1000L);
+		setTimeout(DEVICE_LIST_APPS, 30 * 1000L);
+		setTimeout(DEVICE_LOG_LEVEL, 20 * 1000L);
+		
+		// device commands fail now and then while novacom (re)connects to a device
+		setRetryPolicy(PROJECT_INSTALL, new RetryPolicy(3, 1000, 8000) );
+		setRetryPolicy(PROJECT_LAUNCH, new RetryPolicy(3, 1000, 8000) );
+		setRetryPolicy(DEVICE_LIST_APPS, new RetryPolicy(3, 1000, 8000) );
+	}
+	
 	// Instance variables
 	
-	private boolean active;
-	private boolean completed;
-	private boolean successful;
-	private String report;
+	private volatile boolean active;
+	private volatile boolean completed;
+	private volatile boolean successful;
+	private volatile String report;
+	private volatile boolean cancelled;
+	private volatile boolean timedOut;
+	private Process process;
 	private int taskType;
 	private DevSourceItem devSourceItem;
 	private Device destination;
 	private String[] arguments;
+	private List<Task> prerequisites;
+	private List<Task> dependents;
+	private AtomicBoolean dispatched;
+	private TaskGroup group;
+	private volatile int priority;
+	private volatile long enqueuedAt;
+	private volatile long startedAt;
+	private volatile long finishedAt;
+	private volatile int queueDepth;
+	private volatile Integer exitCode;
+	private AtomicLong outputBytes;
+	private List<CommandRecord> commands;
+	private volatile int attempt;
+	private volatile CommandResult lastResult;
+	private TaskFuture future;
 	
 	// Constructors
 	
@@ -63,10 +144,28 @@ public class Task {
 		completed = false;
 		successful = false;
 		report = null;
+		cancelled = false;
+		timedOut = false;
+		process = null;
 		taskType = myTaskType;
 		devSourceItem = itemReference;
 		destination = destinationReference;
 		arguments = args;
+		prerequisites = new ArrayList<Task>();
+		dependents = new ArrayList<Task>();
+		dispatched = new AtomicBoolean(false);
+		group = null;
+		priority = PRIORITY_INTERACTIVE;
+		enqueuedAt = 0;
+		startedAt = 0;
+		finishedAt = 0;
+		queueDepth = 0;
+		exitCode = null;
+		outputBytes = new AtomicLong(0);
+		commands = new ArrayList<CommandRecord>();
+		attempt = 1;
+		lastResult = null;
+		future = new TaskFuture(this);
 	}
 	
 	/**
@@ -96,7 +195,6 @@ public class Task {
 			case PROJECT_LAUNCH: 			name = "Launch Project"; break;
 			case PROJECT_CLOSE: 			name = "Close Project"; break;
 			case PROJECT_UNINSTALL: 		name = "Uninstall Project"; break;
-			case PROJECT_RUN: 				name = "Run Project"; break;
 			case PROJECT_OPEN_LOGGER: 		name = "Open Palm-Log"; break;
 			case RESOURCE_MONITOR: 			name = "Open Resource Monitor"; break;
 			case DEVICE_SCAN:				name = "Scan For Devices"; break;
@@ -129,7 +227,7 @@ public class Task {
 		return completed;
 	}
 	
-	public void setCompleted(boolean state) {
+	public synchronized void setCompleted(boolean state) {
 		completed = state;
 	}
 	
@@ -169,6 +267,433 @@ public class Task {
 		this.report = report;
 	}
 	
+	/**
+	 * @return True if the task was cancelled, either by request or because it timed out.
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+	
+	/**
+	 * @return True if the task was cancelled because it took longer than its timeout.
+	 */
+	public boolean isTimedOut() {
+		return timedOut;
+	}
+	
+	/**
+	 * Cancels this task. A task that has not started yet will be skipped, a running task
+	 * has its current process destroyed so its worker is freed. Completed tasks are not affected.
+	 */
+	public void cancel() {
+		
+		Process p;
+		synchronized (this) {
+			if (completed || cancelled) {
+				return;
+			}
+			cancelled = true;
+			p = process;
+		}
+		
+		// destroy outside of the lock, this may take a moment
+		ProcessSupervisor.terminate(p);
+	}
+	
+	/**
+	 * Cancels this task and marks it as timed out.
+	 */
+	public void timeOut() {
+		
+		// checked and marked under the same lock as cancel(), so a task that completes meanwhile is not reported as timed out
+		Process p;
+		synchronized (this) {
+			if (completed || cancelled) {
+				return;
+			}
+			timedOut = true;
+			cancelled = true;
+			p = process;
+		}
+		
+		ProcessSupervisor.terminate(p);
+	}
+	
+	/**
+	 * Registers the process that currently runs on behalf of this task, so it can be destroyed on cancellation.
+	 * If the task was cancelled already the process is destroyed immediately.
+	 *
+	 * @param p Running process, or <code>null</code> when the process has finished.
+	 */
+	public void setProcess(Process p) {
+		
+		boolean destroy;
+		synchronized (this) {
+			process = p;
+			destroy = cancelled;
+		}
+		
+		if (destroy) {
+			ProcessSupervisor.terminate(p);
+		}
+	}
+	
+	/**
+	 * @return Timeout for this task in milliseconds, 0 if it never times out.
+	 */
+	public long getTimeout() {
+		return getTimeout(taskType);
+	}
+	
+	/**
+	 * @param type One of the task types.
+	 * @return Timeout for tasks of this type in milliseconds, 0 if such tasks never time out.
+	 */
+	public static long getTimeout(int type) {
+		synchronized (timeouts) {
+			Long timeout = timeouts.get(type);
+			if (timeout != null) {
+				return timeout.longValue();
+			}
+		}
+		return 0;
+	}
+	
+	/**
+	 * Sets the timeout for a type of task. Only affects tasks that have not started yet.
+	 *
+	 * @param type One of the task types.
+	 * @param millis Timeout in milliseconds, use 0 or less to disable the timeout.
+	 */
+	public static void setTimeout(int type, long millis) {
+		synchronized (timeouts) {
+			if (millis > 0) {
+				timeouts.put(type, millis);
+			} else {
+				timeouts.remove(type);
+			}
+		}
+	}
+	
+	/**
+	 * @return Retry policy for this task, or <code>null</code> if it is never retried.
+	 */
+	public RetryPolicy getRetryPolicy() {
+		return getRetryPolicy(taskType);
+	}
+	
+	/**
+	 * @param type One of the task types.
+	 * @return Retry policy for tasks of this type, or <code>null</code> if such tasks are never retried.
+	 */
+	public static RetryPolicy getRetryPolicy(int type) {
+		synchronized (retryPolicies) {
+			return retryPolicies.get(type);
+		}
+	}
+	
+	/**
+	 * Sets the retry policy for a type of task.
+	 *
+	 * @param type One of the task types.
+	 * @param policy Policy to use, or <code>null</code> to never retry tasks of this type.
+	 */
+	public static void setRetryPolicy(int type, RetryPolicy policy) {
+		synchronized (retryPolicies) {
+			if (policy != null) {
+				retryPolicies.put(type, policy);
+			} else {
+				retryPolicies.remove(type);
+			}
+		}
+	}
+	
+	/**
+	 * @return Number of the current attempt, starting at 1.
+	 */
+	public int getAttempt() {
+		return attempt;
+	}
+	
+	/**
+	 * Prepares this task for another attempt.
+	 */
+	void nextAttempt() {
+		attempt++;
+		report = null;
+		lastResult = null;
+	}
+	
+	/**
+	 * @return True if the current attempt failed in a way that the retry policy of this task considers worth retrying.
+	 */
+	boolean shouldRetry() {
+		RetryPolicy policy = getRetryPolicy();
+		return policy != null && !cancelled && policy.shouldRetry( attempt, getLastError() );
+	}
+	
+	/**
+	 * @return Error output of the last command this task ran, or <code>null</code> if there is none or it succeeded.
+	 */
+	public String getLastError() {
+		CommandResult result = lastResult;
+		if (result == null || result.isSuccessful()) {
+			return null;
+		}
+		return result.getError();
+	}
+	
+	/**
+	 * Keeps the result of a command that ran on behalf of this task. Its output is only decoded when asked for.
+	 *
+	 * @param result Result of the command.
+	 */
+	void setLastResult(CommandResult result) {
+		lastResult = result;
+	}
+	
+	/**
+	 * Lets go of the result of the last command, once the task is done and its report is set.
+	 * Finished tasks are kept for the timeline, which has no use for their output.
+	 */
+	void clearLastResult() {
+		lastResult = null;
+	}
+	
+	/**
+	 * Declares another task as a prerequisite of this task, so this task will only be started
+	 * after the other task completed successfully. Prerequisites should be declared before
+	 * this task is added to the TaskManager.
+	 *
+	 * @param task The task that should complete first.
+	 */
+	public void addPrerequisite(Task task) {
+		
+		if (task == null || task == this) {
+			return;
+		}
+		
+		synchronized (this) {
+			prerequisites.add(task);
+		}
+		synchronized (task) {
+			task.dependents.add(this);
+		}
+	}
+	
+	/**
+	 * @return Copy of the list of tasks that should complete before this one can start.
+	 */
+	public synchronized List<Task> getPrerequisites() {
+		return new ArrayList<Task>(prerequisites);
+	}
+	
+	/**
+	 * @return Copy of the list of tasks that wait for this one to complete.
+	 */
+	public synchronized List<Task> getDependents() {
+		return new ArrayList<Task>(dependents);
+	}
+	
+	/**
+	 * @return True if all prerequisites have completed, whether successfully or not.
+	 */
+	public boolean arePrerequisitesCompleted() {
+		
+		List<Task> list = getPrerequisites();
+		for (int i = 0; i < list.size(); i++) {
+			if ( !list.get(i).isCompleted() ) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * @return The first prerequisite that completed without success, or <code>null</code> if there is none.
+	 */
+	public Task getFailedPrerequisite() {
+		
+		List<Task> list = getPrerequisites();
+		for (int i = 0; i < list.size(); i++) {
+			Task t = list.get(i);
+			if ( t.isCompleted() && !t.isSuccessful() ) {
+				return t;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Marks this task as handed over for processing. Used by the TaskManager to make sure
+	 * a task is only dispatched once, even if several prerequisites complete at the same time.
+	 *
+	 * @return True if the task was not dispatched before.
+	 */
+	boolean markDispatched() {
+		return dispatched.compareAndSet(false, true);
+	}
+	
+	/**
+	 * @return Priority of this task, either <code>PRIORITY_INTERACTIVE</code> or <code>PRIORITY_BACKGROUND</code>.
+	 */
+	public int getPriority() {
+		return priority;
+	}
+	
+	/**
+	 * Sets the priority of this task. Only has effect before the task is added to the TaskManager.
+	 *
+	 * @param priority Either <code>PRIORITY_INTERACTIVE</code> or <code>PRIORITY_BACKGROUND</code>.
+	 */
+	public void setPriority(int priority) {
+		this.priority = priority;
+	}
+	
+	/**
+	 * @return True if this task has background priority.
+	 */
+	public boolean isBackground() {
+		return priority == PRIORITY_BACKGROUND;
+	}
+	
+	/**
+	 * Records the moment this task was added to the TaskManager.
+	 * @param depth Number of tasks that were already waiting or running at that moment.
+	 */
+	void markEnqueued(int depth) {
+		queueDepth = depth;
+		enqueuedAt = System.nanoTime();
+	}
+	
+	/**
+	 * Records the moment processing of this task started.
+	 */
+	void markStarted() {
+		// retries count as part of running the task
+		if (startedAt == 0) {
+			startedAt = System.nanoTime();
+		}
+	}
+	
+	/**
+	 * Records the moment this task finished, including tasks that were skipped or cancelled before starting.
+	 * Only the first call has effect.
+	 */
+	void markFinished() {
+		if (finishedAt == 0) {
+			finishedAt = System.nanoTime();
+		}
+	}
+	
+	/**
+	 * Records a command-line process that ran on behalf of this task.
+	 * The exit code of the task is that of its last command.
+	 *
+	 * @param record Timing and result of the process.
+	 */
+	void addCommandRecord(CommandRecord record) {
+		synchronized (commands) {
+			commands.add(record);
+		}
+		exitCode = Integer.valueOf( record.getExitCode() );
+		outputBytes.addAndGet( record.getOutputBytes() );
+	}
+	
+	/**
+	 * @return Moment this task was added (<code>System.nanoTime()</code>), 0 if not added yet.
+	 */
+	public long getEnqueuedAt() {
+		return enqueuedAt;
+	}
+	
+	/**
+	 * @return Moment this task started (<code>System.nanoTime()</code>), 0 if not started.
+	 */
+	public long getStartedAt() {
+		return startedAt;
+	}
+	
+	/**
+	 * @return Moment this task finished (<code>System.nanoTime()</code>), 0 if not finished.
+	 */
+	public long getFinishedAt() {
+		return finishedAt;
+	}
+	
+	/**
+	 * @return Time in nanoseconds between adding and starting this task, or until now if it did not start yet.
+	 */
+	public long getWaitTime() {
+		if (enqueuedAt == 0) {
+			return 0;
+		}
+		long end = (startedAt != 0) ? startedAt : ((finishedAt != 0) ? finishedAt : System.nanoTime());
+		return end - enqueuedAt;
+	}
+	
+	/**
+	 * @return Time in nanoseconds this task has been running, 0 if it never started.
+	 */
+	public long getRunTime() {
+		if (startedAt == 0) {
+			return 0;
+		}
+		long end = (finishedAt != 0) ? finishedAt : System.nanoTime();
+		return end - startedAt;
+	}
+	
+	/**
+	 * @return Number of tasks already waiting or running when this task was added.
+	 */
+	public int getQueueDepth() {
+		return queueDepth;
+	}
+	
+	/**
+	 * @return Exit code of the last command this task ran, or <code>null</code> if it ran no commands.
+	 */
+	public Integer getExitCode() {
+		return exitCode;
+	}
+	
+	/**
+	 * @return Size of all command output of this task.
+	 */
+	public long getOutputBytes() {
+		return outputBytes.get();
+	}
+	
+	/**
+	 * @return Copy of the list of commands this task ran, in order.
+	 */
+	public List<CommandRecord> getCommandRecords() {
+		synchronized (commands) {
+			return new ArrayList<CommandRecord>(commands);
+		}
+	}
+	
+	/**
+	 * @return Future that completes once this task is done, see <code>TaskFuture</code>.
+	 */
+	public TaskFuture getFuture() {
+		return future;
+	}
+	
+	/**
+	 * @return The group this task belongs to, or <code>null</code> if it is not part of a group.
+	 */
+	public TaskGroup getGroup() {
+		return group;
+	}
+	
+	/**
+	 * @param group The group this task belongs to. Use <code>TaskGroup.add()</code> instead of calling this directly.
+	 */
+	void setGroup(TaskGroup group) {
+		this.group = group;
+	}
+	
 	/**
 	 * @return Returns the task type (one of the listed <code>static final</code> types)
 	 */
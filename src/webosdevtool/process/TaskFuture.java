@@ -0,0 +1,271 @@
+package webosdevtool.process;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A TaskFuture completes once a task is done, whether it succeeded, failed, was skipped or was cancelled.
+ * The finished task tells the outcome (<code>Task.isSuccessful()</code>) and its report.
+ * <br />
+ * Callers can wait for it (<code>get()</code>), be called back (<code>addListener()</code>) or chain
+ * another task onto it (<code>thenCompose()</code>), instead of checking <code>TaskManager.hasTasks()</code>
+ * over and over.
+ * <br />
+ * Listeners and continuations run on the thread that completes the future, usually a worker
+ * of the <code>TaskManager</code>, so they should not take long or block.
+ * <br />
+ * Cancelling the future itself (<code>cancel()</code>) cancels its task and completes the future right away,
+ * after which <code>get()</code> throws a <code>CancellationException</code>. A task that is cancelled
+ * in another way (e.g. from the menu, or because it timed out) completes the future as usual.
+ */
+public class TaskFuture implements Future<Task> {
+
+	// Variables
+
+	/**
+	 * Receives the task once it is done.
+	 */
+	public interface Listener {
+		void taskDone(Task task);
+	}
+
+	/**
+	 * Starts the next step of a chain once the previous task is done.
+	 */
+	public interface Continuation {
+		/**
+		 * @param previous The task that is done, check <code>isSuccessful()</code> to see how it went.
+		 * @return Future of the next task, or <code>null</code> to end the chain with <code>previous</code>.
+		 */
+		TaskFuture next(Task previous);
+	}
+
+	private Task current;
+	private Task result;
+	private boolean done;
+	private boolean cancelled;
+	private List<Listener> listeners;
+
+	// Constructors
+
+	/**
+	 * @param task The task this future waits for, may be <code>null</code> for a chain whose task is not known yet.
+	 */
+	TaskFuture (Task task) {
+		this.current = task;
+		this.result = null;
+		this.done = false;
+		this.cancelled = false;
+		this.listeners = new ArrayList<Listener>();
+	}
+
+	// Methods
+
+	/**
+	 * @return A future that is done already, without a task. Used when a request did not lead to a task.
+	 */
+	public static TaskFuture none() {
+		TaskFuture future = new TaskFuture(null);
+		future.complete(null);
+		return future;
+	}
+
+	/**
+	 * Completes this future and calls its listeners. Only the first call has any effect.
+	 *
+	 * @param task The task that is done.
+	 */
+	void complete(Task task) {
+
+		List<Listener> toCall;
+		synchronized (this) {
+			if (done) {
+				return;
+			}
+			done = true;
+			result = task;
+			toCall = listeners;
+			listeners = null;
+			notifyAll();
+		}
+
+		callAll(toCall, task);
+	}
+
+	/**
+	 * Adds a listener that is called once the task is done, or right away if it is done already.
+	 *
+	 * @param listener Listener to add.
+	 */
+	public void addListener(Listener listener) {
+
+		synchronized (this) {
+			if (!done) {
+				listeners.add(listener);
+				return;
+			}
+		}
+		call(listener, result);
+	}
+
+	/**
+	 * Chains another step onto this future. Once the task is done the continuation is asked for the next task;
+	 * the returned future completes when that next task is done. Cancelling the returned future cancels the
+	 * step that is running and prevents later steps from starting.
+	 *
+	 * @param continuation Starts the next step.
+	 * @return Future of the last task of the chain.
+	 */
+	public TaskFuture thenCompose(final Continuation continuation) {
+
+		final TaskFuture chained = new TaskFuture( getTask() );
+		addListener(new Listener() {
+			public void taskDone(Task previous) {
+
+				TaskFuture next = null;
+				if ( !chained.isCancelled() ) {
+					try {
+						next = continuation.next(previous);
+					}
+					catch (RuntimeException e) {
+						System.out.println("Chained step after " + (previous == null ? "nothing" : previous.getName()) + " failed: " + e);
+						e.printStackTrace();
+					}
+				}
+
+				if (next == null) {
+					chained.complete(previous);
+					return;
+				}
+				chained.setCurrent( next.getTask() );
+				next.addListener(new Listener() {
+					public void taskDone(Task task) {
+						chained.complete(task);
+					}
+				});
+			}
+		});
+		return chained;
+	}
+
+	/**
+	 * @return The task that is being waited for at the moment, or the finished task once done.
+	 */
+	public synchronized Task getTask() {
+		return done ? result : current;
+	}
+
+	private synchronized void setCurrent(Task task) {
+		this.current = task;
+	}
+
+	/**
+	 * Cancels the task that is being waited for, and completes this future.
+	 * Listeners are called with that task, which may still be stopping at that moment.
+	 *
+	 * @return False if the future was done already.
+	 */
+	public boolean cancel(boolean mayInterruptIfRunning) {
+
+		Task task;
+		List<Listener> toCall;
+		synchronized (this) {
+			if (done) {
+				return false;
+			}
+			cancelled = true;
+			done = true;
+			task = current;
+			result = task;
+			toCall = listeners;
+			listeners = null;
+			notifyAll();
+		}
+		if (task != null) {
+			task.cancel();
+		}
+
+		callAll(toCall, task);
+		return true;
+	}
+
+	/**
+	 * @return True if this future was cancelled through <code>cancel()</code>.
+	 * Whether the task itself was cancelled is told by <code>Task.isCancelled()</code>.
+	 */
+	public synchronized boolean isCancelled() {
+		return cancelled;
+	}
+
+	public synchronized boolean isDone() {
+		return done;
+	}
+
+	/**
+	 * Waits until the task is done.
+	 *
+	 * @return The finished task, <code>null</code> if no task was added.
+	 * @throws CancellationException If this future was cancelled.
+	 */
+	public synchronized Task get() throws InterruptedException {
+		while (!done) {
+			wait();
+		}
+		return getResult();
+	}
+
+	/**
+	 * Waits until the task is done, but no longer than the given time.
+	 *
+	 * @return The finished task, <code>null</code> if no task was added.
+	 * @throws CancellationException If this future was cancelled.
+	 */
+	public synchronized Task get(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (!done) {
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) {
+				throw new TimeoutException("Task not done within " + timeout + " " + unit);
+			}
+			TimeUnit.NANOSECONDS.timedWait(this, remaining);
+		}
+		return getResult();
+	}
+
+	/**
+	 * @return The finished task, unless this future was cancelled.
+	 */
+	private Task getResult() {
+		if (cancelled) {
+			throw new CancellationException( (result == null ? "Task" : result.getName()) + " was cancelled" );
+		}
+		return result;
+	}
+
+	/**
+	 * Calls the listeners that were waiting for the task.
+	 */
+	private static void callAll(List<Listener> listeners, Task task) {
+		for (int i = 0; i < listeners.size(); i++) {
+			call( listeners.get(i), task );
+		}
+	}
+
+	/**
+	 * Calls a listener, a failing listener does not affect the others.
+	 */
+	private static void call(Listener listener, Task task) {
+		try {
+			listener.taskDone(task);
+		}
+		catch (RuntimeException e) {
+			System.out.println("Task listener failed: " + e);
+			e.printStackTrace();
+		}
+	}
+}
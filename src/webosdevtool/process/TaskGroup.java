@@ -0,0 +1,137 @@
+package webosdevtool.process;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A TaskGroup bundles related tasks, such as installing one package to several devices.
+ * Tasks in a group do not show their own report dialogs; instead a single report with
+ * the results of all tasks is shown once the last task of the group has finished.
+ * <br />
+ * All tasks should be added to the group before any of them is added to the TaskManager,
+ * otherwise the group might consider itself finished too early.
+ */
+public class TaskGroup {
+
+	// Variables
+
+	private String name;
+	private List<Task> tasks;
+	private AtomicInteger remaining;
+
+	// Constructor
+
+	/**
+	 * @param name Human readable name of the group, used as title of its report.
+	 */
+	public TaskGroup (String name) {
+		this.name = name;
+		this.tasks = new ArrayList<Task>();
+		this.remaining = new AtomicInteger(0);
+	}
+
+	// Methods
+
+	/**
+	 * @return Human readable name of the group.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Adds a task to this group.
+	 *
+	 * @param task Task that is not yet added to the TaskManager.
+	 * @return The same task, for convenience.
+	 */
+	public Task add(Task task) {
+
+		synchronized (tasks) {
+			tasks.add(task);
+		}
+		task.setGroup(this);
+		remaining.incrementAndGet();
+
+		return task;
+	}
+
+	/**
+	 * @return Copy of the list of tasks in this group, in the order they were added.
+	 */
+	public List<Task> getTasks() {
+		synchronized (tasks) {
+			return new ArrayList<Task>(tasks);
+		}
+	}
+
+	/**
+	 * @return True if all tasks in this group completed successfully.
+	 */
+	public boolean isSuccessful() {
+
+		List<Task> list = getTasks();
+		for (int i = 0; i < list.size(); i++) {
+			if ( !list.get(i).isSuccessful() ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Builds a report with one line per task, listing its device and outcome.
+	 * Reports of failed tasks are included below the line of that task.
+	 *
+	 * @return Report of all tasks in this group.
+	 */
+	public String getReport() {
+
+		StringBuilder report = new StringBuilder();
+
+		List<Task> list = getTasks();
+		for (int i = 0; i < list.size(); i++) {
+			Task t = list.get(i);
+
+			// where
+			if ( t.getDestinationDevice() != null ) {
+				report.append( t.getDestinationDevice().getName() ).append(" - ");
+			}
+			report.append( t.getName() ).append(": ");
+
+			// outcome
+			if ( t.isSuccessful() ) {
+				report.append("done");
+			} else if ( t.isTimedOut() ) {
+				report.append("timed out");
+			} else if ( t.isCancelled() ) {
+				report.append("cancelled");
+			} else if ( !t.isCompleted() ) {
+				report.append("not finished");
+			} else if ( t.getFailedPrerequisite() != null ) {
+				report.append("skipped");
+			} else {
+				report.append("failed");
+				if ( t.hasReport() ) {
+					report.append("\n    ").append( t.getReport().trim().replace("\n", "\n    ") );
+				}
+			}
+			report.append('\n');
+		}
+
+		return report.toString();
+	}
+
+	/**
+	 * Called by the TaskManager when a task of this group is removed.
+	 * Once all tasks have finished the combined report is shown.
+	 *
+	 * @param task A task of this group that has finished.
+	 */
+	void taskFinished(Task task) {
+		if ( remaining.decrementAndGet() == 0 ) {
+			TaskReportDialog.show(this);
+		}
+	}
+}
@@ -9,21 +9,30 @@ import java.io.IOException;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ScheduledFuture;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 
+import devdaily.OutputLineListener;
 import devdaily.SystemCommandExecutor;
+import devdaily.ThreadedStreamHandler;
 
 /**
  * TaskHandler.class<br />
- * Processes Tasks that were added via its TaskManager. When done this handler,
- * which runs in a separate thread, goes to sleep. It is interrupted by its manager when a
- * new Task is added.
+ * Processes a single Task that was added via its TaskManager. Each handler is run
+ * by one of the worker threads of its manager, so independent tasks are processed concurrently.
  */
-public class TaskHandler extends Thread {
+public class TaskHandler implements Runnable {
 	
 	// Variables
 	
+	/**
+	 * Maximum number of bytes of output kept per stream of a command.
+	 * Commands that write more (e.g. a verbose deploy script) keep their first and last part,
+	 * they are only shown in full while running.
+	 */
+	public static final int RETAINED_OUTPUT_LIMIT = 512 * 1024;
+	
 	private Task currentTask;
 	private TaskManager taskManager;
 	private FileOperator fileOperator;
@@ -35,161 +44,255 @@ public class TaskHandler extends Thread {
 	 *
 	 * @param myTaskManager Reference to its TaskManager
 	 * @param myFileOperator Reference to a FileOperator
+	 * @param myTask The Task this handler should process
 	 */
-	public TaskHandler (TaskManager myTaskManager, FileOperator myFileOperator) {
+	public TaskHandler (TaskManager myTaskManager, FileOperator myFileOperator, Task myTask) {
 		
 		// assign references
 		this.taskManager = myTaskManager;
 		this.fileOperator = myFileOperator;
+		this.currentTask = myTask;
 	}
 	
 	// Run method
 	
 	/**
-	 * Run method tries to sleep. When interrupted by its TaskManager it
-	 * will check whether any tasks are available for processing.
-	 * If so, it will process the task.
+	 * Run method processes the task and reports back to the TaskManager when done.
+	 * This method handles the setting of active and completed status of a task
+	 * based on the results from the particular process() method.
 	 */
 	public void run() {
-		// forever
-		while (true) {
-			
-			// try to sleep
-			synchronized (this) {
-				try {
-				    this.wait();
-			    }
-			    catch (java.lang.InterruptedException iex) {
-			    	System.out.println("Handler: Interrupted while trying to wait");
-			    }
-			    catch (java.lang.IllegalMonitorStateException ims) {
-			    	System.out.println("Handler: Illegal Monitor State Exception while trying to wait");
-			    }
+		
+		// check if not null and not yet taken care of
+		if ( currentTask == null || currentTask.isCompleted() || currentTask.isActive() ) {
+			return;
+		}
+		
+		// a task that was cancelled before it started is skipped
+		if ( currentTask.isCancelled() ) {
+			currentTask.setCompleted(true);
+			taskManager.notifyTaskOutcome(currentTask);
+			taskManager.removeTask(currentTask);
+			return;
+		}
+		
+		// begin, new requests for the same work no longer merge with this task
+		taskManager.taskStarting(currentTask);
+		currentTask.setActive(true);
+		currentTask.markStarted();
+		
+		// cancel the task automatically when it takes too long
+		ScheduledFuture<?> timeout = taskManager.scheduleTimeout(currentTask);
+		
+		// use return value to determine succes
+		boolean success = false; // assume it goes wrong
+		
+		try {
+			// call actual processing and fetch success
+			switch( currentTask.getTaskType() ) {
+				case Task.PROJECT_REVEAL: 			success = processProjectReveal(); break;
+				case Task.PROJECT_JSLINT: 			success = processProjectJSLint(); break;
+				case Task.PROJECT_NEW:	 			success = processProjectNew(); break;
+				case Task.PROJECT_NEW_SCENE:	 	success = processProjectNewScene(); break;
+				case Task.PROJECT_DEPLOY: 			success = processProjectDeploy(); break;
+				case Task.PROJECT_PACKAGE: 			success = processProjectPackage(); break;
+				case Task.PROJECT_INSTALL: 			success = processProjectInstall(); break;
+				case Task.PROJECT_LAUNCH: 			success = processProjectLaunch(false); break;
+				case Task.PROJECT_CLOSE: 			success = processProjectLaunch(true); break;
+				case Task.PROJECT_UNINSTALL: 		success = processProjectUninstall(); break;
+				case Task.PROJECT_OPEN_LOGGER: 		success = processProjectOpenLogger(); break;
+				case Task.OPEN_PROJECT_IN_BROWSER:	success = processProjectOpenInBrowser(); break;
+				case Task.RESOURCE_MONITOR: 		success = processOpenResourceMonitor(); break;
+				case Task.OPEN_WEBBROWSER: 			success = processOpenWebkitBrowser(); break;
+				case Task.DEVICE_SCAN:				success = processDeviceRefreshList(); break;
+				case Task.DEVICE_REVEAL:			success = processDummy(); break;
+				case Task.DEVICE_LIST_APPS:			success = processDeviceGetApplications(); break;
+				case Task.DEVICE_START:			 	success = processDeviceStart(); break;
+				case Task.DEVICE_LOG_LEVEL:			success = processDeviceLogLevel(); break;
+				case Task.DEVICE_ENABLE_HOST_MODE:	success = processEmulatorEnableHostMode(); break;
+				default: 							success = true; break;
 			}
-		    
-		    // when interrupted check whether tasks are available
-		    while ( taskManager.hasTasks() ) {
-				
-				// get a task
-				currentTask = taskManager.getNextTask();
-				
-				// This block handles the setting of active and completed status of a task
-				// based on the results from the particular process() method.
-				
-				// check if not null
-				// null may be returned if no suitable tasks where available
-				if ( currentTask != null ) {
-					
-					// begin
-					currentTask.setActive(true);
-					
-					// use return value to determine succes
-			    	boolean success = false; // assume it goes wrong
-			    	
-			    	try {
-				    	// call actual processing and fetch success
-				    	switch( currentTask.getTaskType() ) {
-				    		case Task.PROJECT_REVEAL: 			success = processProjectReveal(); break;
-							case Task.PROJECT_JSLINT: 			success = processProjectJSLint(); break;
-							case Task.PROJECT_NEW:	 			success = processProjectNew(); break;
-							case Task.PROJECT_NEW_SCENE:	 	success = processProjectNewScene(); break;
-							case Task.PROJECT_DEPLOY: 			success = processProjectDeploy(); break;
-							case Task.PROJECT_PACKAGE: 			success = processProjectPackage(); break;
-							case Task.PROJECT_INSTALL: 			success = processProjectInstall(); break;
-							case Task.PROJECT_LAUNCH: 			success = processProjectLaunch(false); break;
-							case Task.PROJECT_CLOSE: 			success = processProjectLaunch(true); break;
-							case Task.PROJECT_UNINSTALL: 		success = processProjectUninstall(); break;
-							case Task.PROJECT_RUN: 				success = processProjectRun(); break;
-							case Task.PROJECT_OPEN_LOGGER: 		success = processProjectOpenLogger(); break;
-							case Task.OPEN_PROJECT_IN_BROWSER:	success = processProjectOpenInBrowser(); break;
-							case Task.RESOURCE_MONITOR: 		success = processOpenResourceMonitor(); break;
-							case Task.OPEN_WEBBROWSER: 			success = processOpenWebkitBrowser(); break;
-							case Task.DEVICE_SCAN:				success = processDeviceRefreshList(); break;
-							case Task.DEVICE_REVEAL:			success = processDummy(); break;
-							case Task.DEVICE_LIST_APPS:			success = processDeviceGetApplications(); break;
-							case Task.DEVICE_START:			 	success = processDeviceStart(); break;
-							case Task.DEVICE_LOG_LEVEL:			success = processDeviceLogLevel(); break;
-							case Task.DEVICE_ENABLE_HOST_MODE:	success = processEmulatorEnableHostMode(); break;
-				    		default: 							success = true; break;
-				    	}
-			    	} catch (Exception e) {
-			    		System.out.println("FAILED " + currentTask.getName() + ": " + e.toString() );
-			    		e.printStackTrace();
-			    	}
-			    	
-			    	// mark if successful
-					// is false by default
-					if (success) {
-						currentTask.setSuccessful(true);
-					}
-					
-					// check if a report is available, if so handle it
-					if ( currentTask.hasReport() ) {
-						// generate feedback to user
-						TaskReportDialog.show( currentTask );
-					}
-					
-					// finish
-					currentTask.setActive(false);
-					currentTask.setCompleted(true);
-			    	
-			    	// when processing is done ask if task can be removed
-			    	taskManager.removeTask(currentTask);
-			    	
-				} // end of processing task
-				
-				// reset variable
-				currentTask = null;
-				
-		    } // end of tasks loop
-		} // end of forever loop
+		} catch (Exception e) {
+			System.out.println("FAILED " + currentTask.getName() + ": " + e.toString() );
+			e.printStackTrace();
+		}
+		
+		// no need to time out anymore
+		if (timeout != null) {
+			timeout.cancel(false);
+		}
+		
+		// transient failures are tried again later, without holding on to this worker in the meantime
+		if ( !success && currentTask.shouldRetry() ) {
+			long delay = currentTask.getRetryPolicy().getDelay( currentTask.getAttempt() );
+			System.out.println(currentTask.getName() + " failed (attempt " + currentTask.getAttempt() + "), retrying in " + delay + " ms.");
+			currentTask.setActive(false);
+			taskManager.scheduleRetry(currentTask, delay);
+			return;
+		}
+		
+		// a cancelled task never counts as successful, whatever its process returned
+		if ( currentTask.isCancelled() ) {
+			success = false;
+			if ( currentTask.isTimedOut() ) {
+				currentTask.setReport(currentTask.getName() + " did not finish within " + (currentTask.getTimeout() / 1000) + " seconds and was cancelled.");
+			} else {
+				currentTask.setReport(currentTask.getName() + " was cancelled.");
+			}
+			taskManager.notifyTaskOutcome(currentTask);
+		}
+		
+		// mark if successful
+		// is false by default
+		if (success) {
+			currentTask.setSuccessful(true);
+		}
+		
+		// mention when retries did not help
+		if ( !success && currentTask.getAttempt() > 1 && currentTask.hasReport() ) {
+			currentTask.setReport( currentTask.getReport() + "\n(Gave up after " + currentTask.getAttempt() + " attempts.)" );
+		}
+		
+		// check if a report is available, if so handle it
+		// tasks in a group are reported together by their group instead
+		if ( currentTask.hasReport() && currentTask.getGroup() == null ) {
+			// generate feedback to user
+			TaskReportDialog.show( currentTask );
+		}
+		
+		// finish
+		currentTask.markFinished();
+		currentTask.setActive(false);
+		currentTask.setCompleted(true);
+		
+		// when processing is done ask if task can be removed
+		taskManager.removeTask(currentTask);
 	} // end of run()
 	
 	// Helper methods --------------------------------------------------------------------------
 	
 	/**
 	 * Method executes a List of commands and returns the results after processing finishes. This is a blocking method.
+	 * Output is printed line by line while the command runs, so progress of long commands is visible right away.
+	 * At most <code>RETAINED_OUTPUT_LIMIT</code> bytes per stream are kept for the result, see <code>OutputCapture</code>.
 	 * @param commands List of <code>String</code> elements that together form one command-line instruction.
-	 * @return Object array with three items: 1. process exitValue (Integer value: 0 means succesful completion), 2. Process output (String value), 3. Process error output (String value).
+	 * @return Result of the command, with an exit value other than 0 if it could not be run.
 	 */
-	private Object[] execute(List<String> commands) {
-	
-		// init return Object[]
-		Object[] results = new Object[3];
-		results[0] = new Integer(2); // 0 means no error, 1 palm default error
+	private CommandResult execute(List<String> commands) {
+		
+		// do not start anything new for a cancelled task
+		if ( currentTask.isCancelled() ) {
+			return CommandResult.failed(currentTask.getName() + " was cancelled.");
+		}
+		
+		// show output as it comes in, prefixed as several commands may run at the same time
+		final String commandName = getCommandName(commands);
 		
 		// execute the command
 	    SystemCommandExecutor commandExecutor = new SystemCommandExecutor(commands);
+	    commandExecutor.setRetainLimit(RETAINED_OUTPUT_LIMIT);
+	    commandExecutor.setStandardOutputListener(new OutputLineListener() {
+	    	public void outputLine(String line) {
+	    		System.out.println(commandName + ": " + line);
+	    	}
+	    });
+	    commandExecutor.setStandardErrorListener(new OutputLineListener() {
+	    	public void outputLine(String line) {
+	    		System.out.println(commandName + " (error): " + line);
+	    	}
+	    });
 	    try {
 	    	// actual processing, exitvalue is saved
-	    	results[0] = new Integer( commandExecutor.executeCommand() );
+	    	// the process is registered with the task while running, so it can be cancelled
+	    	long startedAt = System.nanoTime();
+	    	commandExecutor.startCommand();
+	    	long spawnedAt = System.nanoTime();
+	    	ProcessSupervisor.register(commandExecutor.getProcess(), commandName);
+	    	currentTask.setProcess( commandExecutor.getProcess() );
+	    	int exitValue;
+	    	try {
+	    		exitValue = commandExecutor.waitForCommand();
+	    	}
+	    	finally {
+	    		currentTask.setProcess(null);
+	    	}
+	    	long finishedAt = System.nanoTime();
 	    	
-	    	// get the stdout and stderr from the command that was run
-		    StringBuilder stdout = commandExecutor.getStandardOutputFromCommand();
-		    StringBuilder stderr = commandExecutor.getStandardErrorFromCommand();
+		    // keep track of where the time went
+		    currentTask.addCommandRecord( new CommandRecord( commandName, startedAt, spawnedAt, finishedAt,
+		    	exitValue, commandExecutor.getOutputLength() ) );
 		    
-		    // save into Object
-		    results[1] = new String(stdout);
-			results[2] = new String(stderr);
-		    
-		    // print the stdout and stderr
-		    System.out.println("The numeric result of the command was: " + results[0]);
-		    System.out.println("STDOUT:");
-		    System.out.println(stdout);
-		    System.out.println("STDERR:");
-		    System.out.println(stderr);
+		    // the output is kept as read, it is only decoded when a caller needs it
+		    ThreadedStreamHandler out = commandExecutor.getStandardOutputHandler();
+		    ThreadedStreamHandler err = commandExecutor.getStandardErrorHandler();
+		    CommandResult result = new CommandResult( exitValue,
+		    	out.getRetainedBytes(), out.getRetainedLength(), err.getRetainedBytes(), err.getRetainedLength(),
+		    	finishedAt - startedAt, currentTask.isTimedOut(), commandExecutor.isOutputTruncated() );
+		    currentTask.setLastResult(result);
+			
+		    System.out.println("The numeric result of " + commandName + " was: " + exitValue);
+		    if ( result.isTruncated() ) {
+		    	System.out.println("Output was longer than " + RETAINED_OUTPUT_LIMIT + " bytes, only its first and last part were kept.");
+		    }
+		    return result;
 	    }
 	    catch (java.io.IOException ioe) {
 	    	System.out.println("IOException: "+ioe);
+	    	return CommandResult.failed( ioe.getMessage() );
 	    }
 	    catch (java.lang.InterruptedException ie) {
 	    	System.out.println("InterruptedException: "+ie);
+	    	return CommandResult.failed(currentTask.getName() + " was interrupted.");
 	    }
 	    catch (java.lang.NullPointerException npe) {
 	    	System.out.println("NullPointerException: "+npe);
+	    	return CommandResult.failed( npe.toString() );
 	    }
+	}
+	
+	/**
+	 * Method starts a command that keeps running after the task is done, such as a monitoring tool.
+	 * Its output is printed while it runs, but not kept.
+	 * @param commands List of <code>String</code> elements that together form one command-line instruction.
+	 * @return True if the command was started.
+	 */
+	private boolean startDetached(List<String> commands) {
+		
+		final String commandName = getCommandName(commands);
+		
+		SystemCommandExecutor commandExecutor = new SystemCommandExecutor(commands);
+		commandExecutor.setRetainLimit(0);
+		OutputLineListener printer = new OutputLineListener() {
+			public void outputLine(String line) {
+				System.out.println(commandName + ": " + line);
+			}
+		};
+		commandExecutor.setStandardOutputListener(printer);
+		commandExecutor.setStandardErrorListener(printer);
+		
+		try {
+			commandExecutor.startCommand();
+			// it is left running, but stopped when Devtool quits
+			ProcessSupervisor.register(commandExecutor.getProcess(), commandName);
+			return true;
+		}
+		catch (java.io.IOException ioe) {
+			System.out.println("IOException: "+ioe);
+			return false;
+		}
+	}
+	
+	/**
+	 * @param commands Command-line instruction as passed to <code>execute()</code>.
+	 * @return Name of the program that is run, skipping the shell if the first element is one.
+	 */
+	private static String getCommandName(List<String> commands) {
 		
-		return results;
+		String name = commands.get(0);
+		if ( commands.size() > 1 && name.endsWith("/bash") ) {
+			name = commands.get(1);
+		}
+		return name.substring( name.lastIndexOf('/') + 1 );
 	}
 	
 	/**
@@ -211,6 +314,40 @@ public class TaskHandler extends Thread {
 		return version;
 	}
 	
+	/**
+	 * Method updates the project of the current task, so its info is in sync with the real source.
+	 * The update is skipped if a prerequisite task for the same project already did so successfully,
+	 * which avoids repeated updates along a chain of tasks (e.g. deploy, package, install).
+	 */
+	private void updateSourceItem() {
+		
+		List<Task> prerequisites = currentTask.getPrerequisites();
+		for (int i = 0; i < prerequisites.size(); i++) {
+			Task t = prerequisites.get(i);
+			if ( t.getDevSourceItem() == currentTask.getDevSourceItem() && t.isSuccessful() ) {
+				return;
+			}
+		}
+		
+		currentTask.getDevSourceItem().update();
+	}
+	
+	/**
+	 * @param type One of the task types.
+	 * @return True if a prerequisite of the given type for the same project completed successfully.
+	 */
+	private boolean hasSuccessfulPrerequisite(int type) {
+		
+		List<Task> prerequisites = currentTask.getPrerequisites();
+		for (int i = 0; i < prerequisites.size(); i++) {
+			Task t = prerequisites.get(i);
+			if ( t.getTaskType() == type && t.getDevSourceItem() == currentTask.getDevSourceItem() && t.isSuccessful() ) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
 	/**
 	 * Method uses list of currently available devices and checks
 	 * whether indicated Device is available.
@@ -337,22 +474,18 @@ public class TaskHandler extends Thread {
 			// New project with name Stock Ticker: palm-generate -p "title=Stock Ticker" ~/projects/Ticker 
 			
 			// build the system command we want to run
-		    List<String> commands = new ArrayList<String>();
-		    commands.add("/bin/bash");
-		    commands.add("/opt/PalmSDK/Current/bin/palm-generate"); // palm-generate
-		    commands.add("-p"); // parameter flag
-		    commands.add("\"{title:\'"+currentTask.getArguments()[1]+"\'}\""); // title as JSON
-		    commands.add(projectFolder + "/app_src"); // <destination path>
+		    CommandBuilder command = CommandBuilder.sdk("palm-generate");
+		    command.arg("-p"); // parameter flag
+		    command.arg("\"{title:\'"+currentTask.getArguments()[1]+"\'}\""); // title as JSON
+		    command.arg(projectFolder + "/app_src"); // <destination path>
 		
 		    // execute the command
-		    Object[] obj = execute(commands);
-			int result = ((Integer) obj[0]); // cast as Integer
+		    CommandResult result = execute( command.build() );
 					
 			// return false if result code is not 0
-			if (result >= 1) {
+			if ( !result.isSuccessful() ) {
 				// generate feedback
-				String errorMessage = ((String) obj[2]);
-				currentTask.setReport(errorMessage);
+				currentTask.setReport( result.getError() );
 				
 				return false;
 			}
@@ -374,24 +507,20 @@ public class TaskHandler extends Thread {
 		// Generate new scene: palm-generate -t new_scene -p "name=First" ~/projects/Ticker
 		
 		// build the system command we want to run
-	    List<String> commands = new ArrayList<String>();
-	    commands.add("/bin/bash");
-	    commands.add("/opt/PalmSDK/Current/bin/palm-generate"); // palm-generate
-	    commands.add("-t"); // template flag
-   	    commands.add("new_scene"); // <template new scene>
-	    commands.add("-p"); // parameter flag
-	    commands.add("\"{name:\'"+currentTask.getArguments()[0]+"\'}\""); // scene name as JSON
-	    commands.add( currentTask.getDevSourceItem().getLocation() + "/app_src"); // <destination path>
+	    CommandBuilder command = CommandBuilder.sdk("palm-generate");
+	    command.arg("-t"); // template flag
+   	    command.arg("new_scene"); // <template new scene>
+	    command.arg("-p"); // parameter flag
+	    command.arg("\"{name:\'"+currentTask.getArguments()[0]+"\'}\""); // scene name as JSON
+	    command.arg( currentTask.getDevSourceItem().getLocation() + "/app_src"); // <destination path>
 	
 	    // execute the command
-	    Object[] obj = execute(commands);
-		int result = ((Integer) obj[0]); // cast as Integer
+	    CommandResult result = execute( command.build() );
 		
 		// return false if result code is not 0
-		if (result >= 1) {
+		if ( !result.isSuccessful() ) {
 			// generate feedback
-			String errorMessage = ((String) obj[2]);
-			currentTask.setReport(errorMessage);
+			currentTask.setReport( result.getError() );
 			
 			return false;
 		}
@@ -408,7 +537,7 @@ public class TaskHandler extends Thread {
 	private boolean processProjectDeploy() {
 		
 		// update item - make sure the info is in sync with real source
-		currentTask.getDevSourceItem().update();
+		updateSourceItem();
 
 		// non-enyo2 does not need deployment
 		// TODO include a proper Enyo version check instead of this file-based assumption
@@ -420,23 +549,18 @@ public class TaskHandler extends Thread {
 		// <source path> ./tools/deploy.sh
 		
 		// build the system command we want to run
-	    List<String> commands = new ArrayList<String>();
-	    commands.add("/bin/bash");
-	    commands.add( currentTask.getDevSourceItem().getLocation() + "/app_src/tools/deploy.sh"); // <source path>
+	    CommandBuilder command = CommandBuilder.shell( currentTask.getDevSourceItem().getLocation() + "/app_src/tools/deploy.sh"); // <source path>
 	    
 	    // execute the command
-	    Object[] obj = execute(commands);
-		int result = ((Integer) obj[0]); // cast as Integer
-		System.out.println(result);
+	    CommandResult result = execute( command.build() );
 
 		// return false if result code is not 0
-		if (result >= 1) {
+		if ( !result.isSuccessful() ) {
 			// generate feedback only for non-1 errors
 			// because usually it means those are regular compiling troubles
 			// which ought to go to a proper (scrollable) log window, not a small dialog
-			if (result >= 2) {
-				String errorMessage = ((String) obj[2]);
-				currentTask.setReport(errorMessage);
+			if (result.getExitValue() >= 2) {
+				currentTask.setReport( result.getError() );
 			}
 			
 			return false;
@@ -452,40 +576,36 @@ public class TaskHandler extends Thread {
 	private boolean processProjectPackage() {
 		
 		// update item - make sure the info is in sync with real source
-		currentTask.getDevSourceItem().update();
+		updateSourceItem();
 
 		// palm-package -o <destination path> <source path>
 		
 		// build the system command we want to run
-	    List<String> commands = new ArrayList<String>();
-	    commands.add("/bin/bash");
-	    commands.add("/opt/PalmSDK/Current/bin/palm-package"); // palm-package
-	    commands.add("--outdir=" + currentTask.getDevSourceItem().getLocation() + "/bin"); // -o <output location>
+	    CommandBuilder command = CommandBuilder.sdk("palm-package");
+	    command.arg("--outdir=" + currentTask.getDevSourceItem().getLocation() + "/bin"); // -o <output location>
 	    // if a deploy folder is found (which should contain a prepared bunch of sources) this folder is packaged instead
 	    // for example Enyo2 includes a deploy script which prepares the app in /deploy
 	    if ( FileOperator.checkFolderValidity(currentTask.getDevSourceItem().getLocation() + "/app_src/deploy/app_src") 
 	    	&& FileOperator.checkFileValidity(currentTask.getDevSourceItem().getLocation() + "/app_src/deploy/app_src/appinfo.json") ) {
-	    	commands.add( currentTask.getDevSourceItem().getLocation() + "/app_src/deploy/app_src"); // <source path>
+	    	command.arg( currentTask.getDevSourceItem().getLocation() + "/app_src/deploy/app_src"); // <source path>
 	    } else {
-	    	commands.add( currentTask.getDevSourceItem().getLocation() + "/app_src"); // <source path>
+	    	command.arg( currentTask.getDevSourceItem().getLocation() + "/app_src"); // <source path>
 	    }
 	    // include extra stuff if required
 	    if ( currentTask.getDevSourceItem().hasService() ) {
-	    	    commands.add( currentTask.getDevSourceItem().getLocation() + "/app_service"); // <service path>
+	    	    command.arg( currentTask.getDevSourceItem().getLocation() + "/app_service"); // <service path>
 	    }
 	    if ( currentTask.getDevSourceItem().hasPackage() ) {
-	    	    commands.add( currentTask.getDevSourceItem().getLocation() + "/app_package"); // <package path>
+	    	    command.arg( currentTask.getDevSourceItem().getLocation() + "/app_package"); // <package path>
 	    }
 	
 	    // execute the command
-	    Object[] obj = execute(commands);
-		int result = ((Integer) obj[0]); // cast as Integer
+	    CommandResult result = execute( command.build() );
 		
 		// return false if result code is not 0
-		if (result >= 1) {
+		if ( !result.isSuccessful() ) {
 			// generate feedback
-			String errorMessage = ((String) obj[2]);
-			currentTask.setReport(errorMessage);
+			currentTask.setReport( result.getError() );
 			
 			return false;
 		}
@@ -504,7 +624,7 @@ public class TaskHandler extends Thread {
 	private boolean processProjectInstall() {
 		
 		// update item - make sure the info is in sync with real source
-		currentTask.getDevSourceItem().update();
+		updateSourceItem();
 		
 		// package location
 		String packagePath = currentTask.getDevSourceItem().getLocation() + "/bin/" + currentTask.getDevSourceItem().getID() + "_" + currentTask.getDevSourceItem().getVersion() + "_all.ipk";
@@ -513,6 +633,13 @@ public class TaskHandler extends Thread {
 		
 		// package is available
 		if ( !FileOperator.fileExists( packagePath ) ) {
+			// a package task that ran before should have made it, so packaging again is of no use
+			// this also keeps concurrent installs of one package from packaging at the same time
+			if ( hasSuccessfulPrerequisite(Task.PROJECT_PACKAGE) ) {
+				currentTask.setReport("Installing failed, the project package could not be found at " + packagePath);
+				return false;
+			}
+			
 			// not available, so get it packaged first
 			processProjectPackage();
 			
@@ -543,21 +670,17 @@ public class TaskHandler extends Thread {
 		// palm-install -d (tcp | usb) <package path>
 		
 		// build the system command we want to run
-	    List<String> commands = new ArrayList<String>();
-	    commands.add("/bin/bash");
-	    commands.add("/opt/PalmSDK/Current/bin/palm-install"); // palm-install
-	    commands.add("--device=" + currentTask.getDestinationDevice().getID() ); // specify device
-	    commands.add( packagePath ); // <package path>
+	    CommandBuilder command = CommandBuilder.sdk("palm-install");
+	    command.device( currentTask.getDestinationDevice().getID() ); // specify device
+	    command.arg( packagePath ); // <package path>
 	
 	    // execute the command
-	    Object[] obj = execute(commands);
-		int result = ((Integer) obj[0]); // cast as Integer
+	    CommandResult result = execute( command.build() );
 		
 		// return false if result code is not 0
-		if (result >= 1) {
+		if ( !result.isSuccessful() ) {
 			// generate feedback
-			String errorMessage = ((String) obj[2]);
-			currentTask.setReport(errorMessage);
+			currentTask.setReport( result.getError() );
 			
 			return false;
 		}
@@ -592,23 +715,20 @@ public class TaskHandler extends Thread {
 		// -l : list installed applications on device
 		
 		// build the system command we want to run
-	    List<String> commands = new ArrayList<String>();
-	    commands.add("/bin/bash");
-	    commands.add("/opt/PalmSDK/Current/bin/palm-launch"); // palm-launch
-	    commands.add("--device=" + currentTask.getDestinationDevice().getID() ); // specify device
+	    CommandBuilder command = CommandBuilder.sdk("palm-launch");
+	    command.device( currentTask.getDestinationDevice().getID() ); // specify device
 	    if (close) {
-	    	commands.add("-c"); // close app
+	    	command.arg("-c"); // close app
 	    }
-	    commands.add( currentTask.getDevSourceItem().getID() ); // <app id>
+	    command.arg( currentTask.getDevSourceItem().getID() ); // <app id>
 	
 	    // execute the command
-	    Object[] obj = execute(commands);
-		int result = ((Integer) obj[0]); // cast as Integer
+	    CommandResult result = execute( command.build() );
 		
 		// return false if result code is not 0
-		if (result >= 1) {
+		if ( !result.isSuccessful() ) {
 			// generate feedback
-			String errorMessage = ((String) obj[2]);
+			String errorMessage = result.getError();
 			// if error is related to project not being installed, show a more readable version
 			if ( errorMessage.contains("no matches for") ) {
 				currentTask.setReport("The application "+currentTask.getDevSourceItem().getName()+" could not be launched as it is not yet installed.");
@@ -643,21 +763,18 @@ public class TaskHandler extends Thread {
 		//Device d = getDestinationDevice();
 				
 		// build the system command we want to run
-	    List<String> commands = new ArrayList<String>();
-	    commands.add("/bin/bash");
-	    commands.add("/opt/PalmSDK/Current/bin/palm-install"); // palm-install
-	    commands.add("--device=" + currentTask.getDestinationDevice().getID() ); // specify device
-	    commands.add("-r"); // remove
-	    commands.add( currentTask.getDevSourceItem().getID() ); // <package id>
+	    CommandBuilder command = CommandBuilder.sdk("palm-install");
+	    command.device( currentTask.getDestinationDevice().getID() ); // specify device
+	    command.arg("-r"); // remove
+	    command.arg( currentTask.getDevSourceItem().getID() ); // <package id>
 	
 	    // execute the command
-	    Object[] obj = execute(commands);
-		int result = ((Integer) obj[0]); // cast as Integer
+	    CommandResult result = execute( command.build() );
 		
 		// return false if result code is not 0
-		if (result >= 1) {
+		if ( !result.isSuccessful() ) {
 			// generate feedback
-			String errorMessage = ((String) obj[2]);
+			String errorMessage = result.getError();
 			// if the error message just tells that the app was not available anyway ignore it
 			// that is not an error because the goal is reached
 			if ( !errorMessage.contains("command failed with returnValue: false") ) {
@@ -669,27 +786,6 @@ public class TaskHandler extends Thread {
 		return true;
 	}
 	
-	/**
-	 * @return Boolean value indicating success (true) or failure (false).
-	 */
-	private boolean processProjectRun() {
-		
-		// deploy
-		if ( processProjectDeploy() ) {
-			// package
-			if ( processProjectPackage() ) {
-				// install
-				if ( processProjectInstall() ) {
-					// launch
-					return processProjectLaunch(false);
-				}
-			}
-		}
-		
-		// return without success if we end up here
-		return false;
-	}
-	
 	/**
 	 * @return Boolean value indicating success (true) or failure (false).
 	 */
@@ -737,20 +833,19 @@ public class TaskHandler extends Thread {
 		// palm-worm -d <device> <appid>
 						
 		// build the system command we want to run
-	    final List<String> commands = new ArrayList<String>();
+	    List<String> commands = new ArrayList<String>();
 	    
-	    boolean monitorAppExists = FileOperator.fileExists("/Applications/Palm Monitor.app");
+	    String monitorApp = ToolResolver.findApplication("Palm Monitor");
 	    
-	    if (monitorAppExists) {
+	    if (monitorApp != null) {
 	    	// use Resource Monitor app
 	    	commands.add("open"); // mac open command
-	    	commands.add("/Applications/Palm Monitor.app"); // the monitor app
+	    	commands.add(monitorApp); // the monitor app
 	    	commands.add("--args"); // indicates arguments will follow
 	    	//commands.add("-gui"); // indicates to return to this apps's gui upon closing
 	    } else {
 	    	// use regular palm-worm command
-		    commands.add("/bin/bash");
-		    commands.add("/opt/PalmSDK/Current/bin/palm-worm"); // palm-worm
+		    commands.addAll( CommandBuilder.sdk("palm-worm").build() ); // palm-worm
 	    }
 	    // rest is not specific
 	    commands.add("-d"); // device
@@ -760,13 +855,9 @@ public class TaskHandler extends Thread {
 	    	commands.add( currentTask.getDevSourceItem().getID() ); // <package id>
 	    }
 	    
-	    // execute the command
-	    // done in separate thread to avoid execute not returning...
-	    new Thread (new Runnable () {
-			public void run () {
-				execute(commands);
-			}
-	    }).start();
+	    // start the command without waiting for it, as it only returns upon closing the Resource Monitor
+	    // its output is still read and shown by the shared stream pump
+	    startDetached(commands);
 		
 		// return positively
 		// NOTE: result cannot be checked, as it will only return upon closing the Resource Logger
@@ -789,24 +880,30 @@ public class TaskHandler extends Thread {
 	    List<String> commands = new ArrayList<String>();
 	    commands.add("open"); // mac open command
 	    // pick right browser
+	    String browserApp = null;
 	    if ( browserChoice.equals("chrome") ) {
-		    commands.add("/Applications/Google Chrome.app"); // Chrome
-	    } else {
-	    	commands.add("/Applications/Safari.app"); // Safari - default
+		    browserApp = ToolResolver.findApplication("Google Chrome"); // Chrome
+	    }
+	    if (browserApp == null) {
+	    	browserApp = ToolResolver.findApplication("Safari"); // Safari - default
+	    }
+	    if (browserApp == null) {
+	    	currentTask.setReport("No WebKit browser (Safari or Google Chrome) could be found.");
+	    	return false;
 	    }
+	    commands.add(browserApp);
 	    commands.add("--args"); // indicates arguments will follow
 	    commands.add("--allow-file-access-from-files"); // arg (required for Enyo to work in browser)
 	    commands.add("--enable-file-cookies"); // arg (required for Enyo to work in browser)
 	    commands.add("--disable-web-security"); // arg (required for Enyo to work in browser)
 	    
 	    // execute the command
-	    Object[] result = execute(commands);
+	    CommandResult result = execute(commands);
 		
 		// return false if result code is not 0
-		if ( ((Integer) result[0]) > 0) {
+		if ( !result.isSuccessful() ) {
 			// generate feedback
-			String errorMessage = ((String) result[2]);
-			currentTask.setReport(errorMessage);
+			currentTask.setReport( result.getError() );
 			return false;
 		}
 		// else return positively
@@ -826,20 +923,18 @@ public class TaskHandler extends Thread {
 		//"<device name>" {<nduid>} <connection type> <port>
 
 		// build the system command we want to run
-	    List<String> commands = new ArrayList<String>();
-	    commands.add("/bin/bash");
-	    commands.add("/opt/PalmSDK/Current/bin/palm-launch"); // palm-launch
-	    commands.add("--device-list"); // generate list
+	    CommandBuilder command = CommandBuilder.sdk("palm-launch");
+	    command.arg("--device-list"); // generate list
 		
 		// get result
-		Object[] result = execute(commands);
+		CommandResult result = execute( command.build() );
 		
 		// only parse result if successful
-		if ( ((Integer) result[0]) > 0) {
+		if ( !result.isSuccessful() ) {
 			return false;
 		} else {
 			// parse command output
-			String deviceString = ((String) result[1]);
+			String deviceString = result.getOutput();
 			List<String> foundIDs = new ArrayList<String>();
 			
 			// per item get info				
@@ -965,21 +1060,19 @@ public class TaskHandler extends Thread {
 		}
 		
 		// build the system command we want to run
-	    List<String> commands = new ArrayList<String>();
-	    commands.add("/bin/bash");
-	    commands.add("/opt/PalmSDK/Current/bin/palm-launch"); // palm-launch
-	    commands.add("--device=" + deviceID ); // specify device
-	    commands.add("-l"); // list apps
+	    CommandBuilder command = CommandBuilder.sdk("palm-launch");
+	    command.device(deviceID); // specify device
+	    command.arg("-l"); // list apps
 		
 		// get result
-		Object[] result = execute(commands);
+		CommandResult result = execute( command.build() );
 		
 		// only parse result if successful
-		if ( ((Integer) result[0]) > 0) {
+		if ( !result.isSuccessful() ) {
 			return null;
 		} else {
 			// parse command output
-			String appsString = ((String) result[1]);
+			String appsString = result.getOutput();
 			appsString = appsString.replaceFirst("^.+?\\n{1}", "");
 			List<InstalledApp> foundApps = new ArrayList<InstalledApp>();
 			
@@ -1036,27 +1129,23 @@ public class TaskHandler extends Thread {
 		// palm-log -d usb --system-log-level <info|warning|error|integer 0-100>
 
 		// build the system command we want to run
-	    List<String> commands = new ArrayList<String>();
-	    commands.add("/bin/bash");
-	    commands.add("/opt/PalmSDK/Current/bin/palm-log"); // palm-log
-	    commands.add("--device=" + currentTask.getDestinationDevice().getID() ); // specify device
-	    commands.add("--system-log-level"); // set log level
+	    CommandBuilder command = CommandBuilder.sdk("palm-log");
+	    command.device( currentTask.getDestinationDevice().getID() ); // specify device
+	    command.arg("--system-log-level"); // set log level
 	    if (currentTask.getArguments() != null) { // otherwise it is a get request
-	    	commands.add( currentTask.getArguments()[0] ); // <level>
+	    	command.arg( currentTask.getArguments()[0] ); // <level>
 	    }
 	
 	    // execute the command
-	    Object[] obj = execute(commands);
-		int result = ((Integer) obj[0]); // cast as Integer
+	    CommandResult result = execute( command.build() );
 		
 		// return false if result code is not 0
-		if (result >= 1) {
+		if ( !result.isSuccessful() ) {
 			// generate feedback
-			String errorMessage = ((String) obj[2]);
-			currentTask.setReport(errorMessage);
+			currentTask.setReport( result.getError() );
 			return false;
 		} //else {
-			//String report = (String) obj[1];
+			//String report = result.getOutput();
 			// use feedback to set log level variable in device data
 			//currentTask.getDestinationDevice().setLogLevel(feedbackLevel, false);
 		//}
@@ -1088,21 +1177,18 @@ public class TaskHandler extends Thread {
 				// ssh -p 5522 -L 5580:localhost:8080 root@localhost 
 				
 				// build the system command we want to run
-			    List<String> commands = new ArrayList<String>();
-			    commands.add("/bin/bash");
-			    commands.add("ssh"); // ssh
-   			    commands.add("-p");
-   			    commands.add("5522");
-   			    commands.add("-L");
-   			    commands.add("5580:localhost:8080");
-   			    commands.add("root@localhost");
+			    CommandBuilder command = CommandBuilder.shell("ssh");
+   			    command.arg("-p");
+   			    command.arg("5522");
+   			    command.arg("-L");
+   			    command.arg("5580:localhost:8080");
+   			    command.arg("root@localhost");
 			    
 			    // execute the command
-			    Object[] obj = execute(commands);
-				int result = ((Integer) obj[0]); // cast as Integer
+			    CommandResult result = execute( command.build() );
 			
 				// setup successful if result code is 0
-				if (result == 0) {
+				if ( result.isSuccessful() ) {
 					sshSuccess = true;
 				}
 			} else if ( versionINT >= 200) {
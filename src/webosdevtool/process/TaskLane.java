@@ -0,0 +1,165 @@
+package webosdevtool.process;
+
+import java.util.Comparator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A TaskLane processes its tasks one by one, in the order they were added.
+ * It does not own a thread; instead it borrows a worker from the TaskManager's pool
+ * whenever it has work to do. Multiple lanes therefore progress in parallel,
+ * while tasks within one lane (e.g. all tasks for a single device) keep their order.
+ * <br />
+ * Pending handlers are kept in a concurrent queue and at most one worker is scheduled per lane,
+ * which is guarded by an atomic flag rather than a lock.
+ * <br />
+ * Interactive and background tasks are queued separately. Each waiting task has a deadline, which is the
+ * moment it was added plus <code>BACKGROUND_DELAY</code> for background tasks. The task with the earliest
+ * deadline goes first, so interactive tasks overtake background tasks, but a background task that waited
+ * longer than the delay is no longer overtaken. The lane uses the same deadline to line up for a worker.
+ */
+class TaskLane implements Runnable {
+
+	// Variables
+
+	/**
+	 * Time in nanoseconds that background tasks give way to interactive tasks.
+	 */
+	static final long BACKGROUND_DELAY = TimeUnit.SECONDS.toNanos(5);
+
+	/**
+	 * Orders lanes waiting for a worker by the deadline of their first task.
+	 */
+	static final Comparator<Runnable> DEADLINE_ORDER = new Comparator<Runnable>() {
+		public int compare(Runnable a, Runnable b) {
+			long da = (a instanceof TaskLane) ? ((TaskLane) a).scheduledDeadline : 0;
+			long db = (b instanceof TaskLane) ? ((TaskLane) b).scheduledDeadline : 0;
+			// compare the difference, as nanoTime values may overflow
+			long diff = da - db;
+			return (diff < 0) ? -1 : ((diff > 0) ? 1 : 0);
+		}
+	};
+
+	private String name;
+	private Executor workers;
+	private Queue<Entry> interactive;
+	private Queue<Entry> background;
+	private AtomicBoolean scheduled;
+	private volatile long scheduledDeadline;
+
+	// Constructor
+
+	/**
+	 * @param name Name of this lane, used for feedback only.
+	 * @param workers Pool of workers which is used to run the tasks in this lane.
+	 */
+	TaskLane (String name, Executor workers) {
+		this.name = name;
+		this.workers = workers;
+		this.interactive = new ConcurrentLinkedQueue<Entry>();
+		this.background = new ConcurrentLinkedQueue<Entry>();
+		this.scheduled = new AtomicBoolean(false);
+	}
+
+	// Methods
+
+	/**
+	 * @return Name of this lane.
+	 */
+	String getName() {
+		return name;
+	}
+
+	/**
+	 * Adds a handler to the end of this lane. If the lane was idle it asks for a worker.
+	 * @param handler The TaskHandler to run.
+	 * @param isBackground True if the task has background priority.
+	 */
+	void submit(TaskHandler handler, boolean isBackground) {
+
+		long deadline = System.nanoTime();
+		if (isBackground) {
+			background.offer( new Entry(handler, deadline + BACKGROUND_DELAY) );
+		} else {
+			interactive.offer( new Entry(handler, deadline) );
+		}
+		schedule();
+	}
+
+	/**
+	 * Runs the first pending handler. If more work is left the lane is put back into the pool's queue
+	 * rather than holding on to the worker, so other lanes get their fair share of workers.
+	 */
+	public void run() {
+
+		try {
+			Entry entry = next(true);
+			if (entry != null) {
+				entry.handler.run();
+			}
+		}
+		finally {
+			// release the lane, then check whether work was added in the meantime
+			scheduled.set(false);
+			if ( !interactive.isEmpty() || !background.isEmpty() ) {
+				schedule();
+			}
+		}
+	}
+
+	/**
+	 * Asks for a worker, unless one is already on its way or busy with this lane.
+	 */
+	private void schedule() {
+		if ( scheduled.compareAndSet(false, true) ) {
+			Entry first = next(false);
+			scheduledDeadline = (first != null) ? first.deadline : System.nanoTime();
+			workers.execute(this);
+		}
+	}
+
+	/**
+	 * Picks the waiting entry with the earliest deadline. Both queues are in deadline order already,
+	 * so only their heads need to be compared.
+	 *
+	 * @param remove True to take the entry from its queue, false to only look at it.
+	 * @return The next entry, or <code>null</code> if nothing is waiting.
+	 */
+	private Entry next(boolean remove) {
+
+		Entry i = interactive.peek();
+		Entry b = background.peek();
+
+		Queue<Entry> source;
+		if (i == null && b == null) {
+			return null;
+		} else if (b == null) {
+			source = interactive;
+		} else if (i == null) {
+			source = background;
+		} else {
+			source = (i.deadline - b.deadline <= 0) ? interactive : background;
+		}
+
+		return remove ? source.poll() : source.peek();
+	}
+
+	// Inner classes
+
+	/**
+	 * A waiting handler and the moment it should run by.
+	 */
+	private static class Entry {
+
+		final TaskHandler handler;
+		final long deadline;
+
+		Entry(TaskHandler handler, long deadline) {
+			this.handler = handler;
+			this.deadline = deadline;
+		}
+	}
+}
@@ -3,13 +3,57 @@ package webosdevtool.process;
 import webosdevtool.Devtool;
 import webosdevtool.DevSourceItem;
 
-import java.util.Vector;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Class manages tasks and allows addition and removal of such tasks.
- * Task themselves are handled by a separate <code>TaskHandler</code> which is notified of available tasks
- * and simply takes the first one on the list. The TaskHandler asks for a next task when done with one.
- * If no tasks are available it goes to sleep, only to be woken up by this TaskManager upon adding a new Task.
+ * Task themselves are handled by a <code>TaskHandler</code> per task, which is executed by a bounded
+ * pool of worker threads. Independent tasks (e.g. installing to different devices) thus run concurrently.
+ * The pool size defaults to one worker per processor core plus a few extra lanes for I/O-bound tasks,
+ * as most tasks spend their time waiting on SDK command-line tools. It can be configured via the
+ * <code>webosdevtool.workers</code> system property or the constructor.
+ * <br />
+ * Tasks are routed into serial lanes: one per destination device, plus a shared lane for tasks
+ * that do not involve a device (e.g. JSLint or scanning for devices). Order is preserved per device,
+ * while a device that does not respond only holds up the tasks aimed at that same device.
+ * <br />
+ * Bookkeeping is done without global locking: tasks are kept in a concurrent set and the number of tasks
+ * per project or device is tracked by a counter, so adding, removing and counting tasks take constant time.
+ * <br />
+ * Tasks with prerequisites (see <code>Task.addPrerequisite()</code>) are held back until all their
+ * prerequisites are completed. Ready tasks are dispatched to their lanes, so independent parts of a graph
+ * run concurrently. When a task fails only the tasks depending on it are skipped.
+ * <br />
+ * Adding a device scan or application listing that is identical to one which is still waiting (same type,
+ * project, device and arguments) does not add it again; the waiting task is returned instead, so bursts of
+ * requests result in a single execution. Tasks that are part of a graph or a group are never coalesced.
+ * <br />
+ * Interactive tasks go ahead of background tasks, both within a lane and when lanes wait for a worker.
+ * Background tasks only give way for a limited time (see <code>TaskLane</code>), so they are never starved.
+ * <br />
+ * Tasks that fail in a way their <code>RetryPolicy</code> considers transient are queued again after a delay,
+ * which is timed by the same timer as the timeouts so no worker waits in the meantime.
+ * <br />
+ * Finished tasks are recorded in a <code>TaskMetrics</code> registry, which the task timeline uses.
+ * <br />
+ * Each task has a <code>TaskFuture</code> that completes when the task is removed, so callers can wait for
+ * its outcome or chain further tasks onto it.
  * <br />
  * This instance also updates relevant GUI elements if necessary.
  */
@@ -17,25 +61,74 @@ public class TaskManager {
 	
 	// Variables
 	
+	/**
+	 * Number of workers added on top of the number of cores, as most tasks are I/O-bound.
+	 */
+	public static final int IO_LANES = 2;
+	
+	/**
+	 * Key of the lane that handles all tasks without a destination device.
+	 */
+	public static final String SHARED_LANE = "shared";
+	
 	protected Devtool devtool;
 	
-	Vector tasks;
+	private Set<Task> tasks;
+	
+	private AtomicInteger numberOfTasks;
+	
+	private ConcurrentMap<DevSourceItem, AtomicInteger> tasksPerItem;
+	
+	private ExecutorService workers;
+	
+	private ScheduledExecutorService timer;
 	
-	TaskHandler taskHandler;
+	private ConcurrentMap<String, TaskLane> lanes;
 	
-	// Constructor
+	private ConcurrentMap<PendingKey, Task> pending;
+	
+	private TaskMetrics metrics;
+	
+	private final Object idle = new Object();
+	
+	// Constructors
 	
 	/**
 	 * @param myParent Instance of Devtool for which this class handles tasks.
 	 */
 	public TaskManager (Devtool myParent) {
+		this(myParent, Integer.getInteger("webosdevtool.workers", Runtime.getRuntime().availableProcessors() + IO_LANES).intValue() );
+	}
+	
+	/**
+	 * @param myParent Instance of Devtool for which this class handles tasks.
+	 * @param numberOfWorkers Maximum number of tasks that are processed concurrently.
+	 */
+	public TaskManager (Devtool myParent, int numberOfWorkers) {
 		
 		this.devtool = myParent;
 		
-		tasks = new Vector();
+		tasks = Collections.newSetFromMap( new ConcurrentHashMap<Task, Boolean>() );
+		numberOfTasks = new AtomicInteger(0);
+		tasksPerItem = new ConcurrentHashMap<DevSourceItem, AtomicInteger>();
+		lanes = new ConcurrentHashMap<String, TaskLane>();
+		pending = new ConcurrentHashMap<PendingKey, Task>();
+		metrics = new TaskMetrics();
+		
+		// at least one worker is required to get anything done
+		if (numberOfWorkers < 1) {
+			numberOfWorkers = 1;
+		}
+		
+		// idle workers time out so an idle application does not hold on to threads
+		// lanes waiting for a worker are served by the deadline of their first task rather than in arrival order
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(numberOfWorkers, numberOfWorkers,
+			30L, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(11, TaskLane.DEADLINE_ORDER), new WorkerThreadFactory() );
+		pool.allowCoreThreadTimeOut(true);
+		workers = pool;
 		
-		taskHandler = new TaskHandler(this, devtool.fileOperator);
-		taskHandler.start();
+		// a single thread is enough to cancel tasks that time out
+		timer = new ScheduledThreadPoolExecutor(1, new WorkerThreadFactory("TaskTimer-") );
 	}
 	
 	// Methods
@@ -43,12 +136,45 @@ public class TaskManager {
 	/**
 	 * @return True if there are tasks left to be done.
 	 */
-	public synchronized boolean hasTasks() {
+	public boolean hasTasks() {
 		// if any tasks left
-		if ( !tasks.isEmpty() ) {
-			return true;
+		return numberOfTasks.get() > 0;
+	}
+	
+	/**
+	 * Waits until all tasks are done, or until the timeout has passed. Unlike checking <code>hasTasks()</code>
+	 * repeatedly, this returns as soon as the last task is removed.
+	 *
+	 * @param timeout Maximum time to wait in milliseconds.
+	 * @return True if no tasks are left.
+	 */
+	public boolean awaitIdle(long timeout) throws InterruptedException {
+		
+		long deadline = System.currentTimeMillis() + timeout;
+		synchronized (idle) {
+			while ( hasTasks() ) {
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0) {
+					return false;
+				}
+				idle.wait(remaining);
+			}
 		}
-		return false;
+		return true;
+	}
+	
+	/**
+	 * @return Copy of the tasks that are currently waiting or running.
+	 */
+	public List<Task> getTasks() {
+		return new ArrayList<Task>(tasks);
+	}
+	
+	/**
+	 * @return Registry with metrics of finished tasks.
+	 */
+	public TaskMetrics getMetrics() {
+		return metrics;
 	}
 	
 	/**
@@ -57,30 +183,13 @@ public class TaskManager {
 	 *
 	 * @return Number of tasks for the specified <code>DevSourceItem</code>.
 	 */
-	public synchronized int getNumberOfTasksForItem(DevSourceItem itemOfInterest) {
+	public int getNumberOfTasksForItem(DevSourceItem itemOfInterest) {
 		
-		int numberOfTasks = 0;
-		
-		// loop over all tasks to find a match with item of interest
-		for (int i = 0; i < tasks.size(); i++) {
-			
-			// get source item
-			Task task = (Task) tasks.elementAt(i);
-			
-			// differentiate between projects and devices
-			if ( itemOfInterest.isDevice() ) {
-				// match -> testing for reference to same object
-				if ( task.getDestinationDevice() == itemOfInterest) {
-					numberOfTasks++;
-				}
-			} else {
-				if ( task.getDevSourceItem() == itemOfInterest) {
-					numberOfTasks++;
-				}
-			}
+		AtomicInteger counter = tasksPerItem.get(itemOfInterest);
+		if (counter == null) {
+			return 0;
 		}
-		
-		return numberOfTasks;
+		return counter.get();
 	}
 	
 	/**
@@ -100,83 +209,375 @@ public class TaskManager {
 	}
 	
 	/**
-	 * Adds a task and interrupts the TaskHandler thread from its sleep so it can ask for the new Task.
-	 * Method is synchronised to avoid concurrent modification of the tasks Vector.
-	 * This method also calls <code>updateItemTaskCounterIndicator()</code> to reflect the addition.
+	 * Adjusts the task counter of a project or device and updates its indicator.
+	 * It checks whether the input is <code>null</code>. If so, the call is ignored.
+	 *
+	 * @param item The desired <code>DevSourceItem</code> to update.
+	 * @param delta Change in the number of tasks (e.g. 1 or -1).
+	 */
+	private void adjustItemTaskCounter(DevSourceItem item, int delta) {
+		
+		// make sure the item is defined
+		if (item != null) {
+			AtomicInteger counter = tasksPerItem.get(item);
+			if (counter == null) {
+				AtomicInteger newCounter = new AtomicInteger(0);
+				counter = tasksPerItem.putIfAbsent(item, newCounter);
+				if (counter == null) {
+					counter = newCounter;
+				}
+			}
+			item.getSourceListItem().setCounterValue( counter.addAndGet(delta) );
+		}
+	}
+	
+	/**
+	 * Adds a task and hands it to a new TaskHandler in the lane of its destination device.
+	 * The handler is run as soon as preceding tasks in that lane are done and a worker is available.
+	 * A task with prerequisites is only handed over once those have completed.
+	 * If an identical device scan or application listing is still waiting to be processed that task
+	 * is returned instead and the new task is not added.
+	 * This method also updates the task counter indicators to reflect the addition.
 	 *
 	 * @param newTask A new Task instance to add.
+	 * @return The task that will be processed, either <code>newTask</code> or an identical waiting task.
 	 */
-	public synchronized void addTask(Task newTask) {
-		// add
-		tasks.add(newTask);
+	public Task addTask(Task newTask) {
+		
+		// coalesce with an identical task that has not started yet
+		if ( isCoalescable(newTask) ) {
+			PendingKey key = new PendingKey(newTask);
+			Task existing = pending.putIfAbsent(key, newTask);
+			if (existing != null) {
+				// an interactive request does not wait for a background task to get its turn
+				if ( !existing.isActive() && !existing.isCompleted() && !existing.isCancelled()
+					&& existing.getPriority() <= newTask.getPriority() ) {
+					System.out.println("Coalesced " + newTask.getName() + " with an identical waiting task.");
+					return existing;
+				}
+				// later requests merge with the new task instead
+				pending.put(key, newTask);
+			}
+		}
+		
+		// add, a task can only be added once
+		if ( !tasks.add(newTask) ) {
+			return newTask;
+		}
 		
 		// update bottombar
-		devtool.setActivityIndicator( tasks.size() );
+		int depth = numberOfTasks.incrementAndGet();
+		devtool.setActivityIndicator(depth);
+		newTask.markEnqueued(depth - 1);
 		
 		// update task indicators
-		updateItemTaskCounterIndicator( newTask.getDevSourceItem() );
-		updateItemTaskCounterIndicator( newTask.getDestinationDevice() );
+		adjustItemTaskCounter( newTask.getDevSourceItem(), 1 );
+		adjustItemTaskCounter( newTask.getDestinationDevice(), 1 );
 		
-		// notify handler so it can work on the task
-		synchronized (taskHandler) {
-			try {
-				taskHandler.notify();
-			}
-			catch (java.lang.IllegalMonitorStateException ims) {
-				System.out.println("Manager could not wake up Handler");
+		// let the appropriate lane process the task, if it can start
+		dispatchIfReady(newTask);
+		
+		return newTask;
+	}
+	
+	/**
+	 * Only tasks that read from a device are coalesced. A task that changes something (e.g. launching an app)
+	 * may have opposite tasks queued after it, such as closing that app, and merging it would reorder them.
+	 * Tasks that are part of a graph or group are never coalesced, as others depend on that exact instance.
+	 *
+	 * @param task Task to check.
+	 * @return True if the task may be merged with an identical waiting task.
+	 */
+	private boolean isCoalescable(Task task) {
+		int type = task.getTaskType();
+		return (type == Task.DEVICE_SCAN || type == Task.DEVICE_LIST_APPS)
+			&& task.getGroup() == null
+			&& task.getPrerequisites().isEmpty()
+			&& task.getDependents().isEmpty();
+	}
+	
+	/**
+	 * Called by a TaskHandler just before it starts processing a task.
+	 * From now on requests for an identical task no longer merge with this one,
+	 * as its result might not reflect changes made after it started.
+	 *
+	 * @param task The task that is about to start.
+	 */
+	void taskStarting(Task task) {
+		pending.remove( new PendingKey(task), task );
+	}
+	
+	/**
+	 * Hands a task to its lane if all of its prerequisites have completed.
+	 * If any prerequisite failed the task is skipped instead, which in turn releases its own dependents.
+	 *
+	 * @param task A task that has been added to this manager.
+	 */
+	private void dispatchIfReady(Task task) {
+		
+		// prerequisites may still be waiting or running, or the task was not added yet
+		if ( !task.arePrerequisitesCompleted() || !tasks.contains(task) ) {
+			return;
+		}
+		// make sure it is dispatched only once
+		if ( !task.markDispatched() ) {
+			return;
+		}
+		
+		Task failed = task.getFailedPrerequisite();
+		if (failed != null) {
+			// short-circuit, the reason was already reported by the failed task
+			System.out.println("Skipping " + task.getName() + " because " + failed.getName() + " did not succeed.");
+			task.setReport("Skipped because " + failed.getName() + " did not succeed.");
+			task.setCompleted(true);
+			removeTask(task);
+			return;
+		}
+		
+		getLane(task).submit( new TaskHandler(this, devtool.fileOperator, task), task.isBackground() );
+	}
+	
+	/**
+	 * Returns the lane for a task, creating it when it is the first task for a device.
+	 * Lanes are keyed on the device ID at the time of adding; tasks without a device share a lane.
+	 *
+	 * @param task Task to find a lane for.
+	 * @return TaskLane that should process the task.
+	 */
+	private TaskLane getLane(Task task) {
+		
+		String key = SHARED_LANE;
+		if ( task.getDestinationDevice() != null ) {
+			key = "device:" + task.getDestinationDevice().getID();
+		}
+		
+		TaskLane lane = lanes.get(key);
+		if (lane == null) {
+			TaskLane newLane = new TaskLane(key, workers);
+			lane = lanes.putIfAbsent(key, newLane);
+			if (lane == null) {
+				lane = newLane;
 			}
 		}
+		return lane;
 	}
 	
 	/**
-	 * Removes a task. Method is synchronised to avoid concurrent modification of the tasks Vector.
+	 * Removes a task. Only tasks that are no longer active can be removed.
+	 * Tasks that depend on the removed task are dispatched if they are ready by now.
 	 * @param taskToRemove A Task instance to remove.
 	 * @to.do Handle unsuccessful tasks in a different way from successfully completed ones.
 	 */
-	public synchronized void removeTask(Task taskToRemove) {
+	public void removeTask(Task taskToRemove) {
 		
-		// check if available
-		if ( tasks.contains(taskToRemove) ) {
-
-			// if not active remove
-			if ( !taskToRemove.isActive() ) {
-				// remove
-				tasks.remove(taskToRemove);
-				
-				// update bottombar
-				devtool.setActivityIndicator( tasks.size() );
-				
-				// update task indicators
-				updateItemTaskCounterIndicator( taskToRemove.getDevSourceItem() );
-				updateItemTaskCounterIndicator( taskToRemove.getDestinationDevice() );
+		// if not active remove
+		if ( taskToRemove.isActive() ) {
+			return;
+		}
+		
+		// remove, only continue if it was actually available
+		if ( tasks.remove(taskToRemove) ) {
+			
+			// in case it never started
+			pending.remove( new PendingKey(taskToRemove), taskToRemove );
+			
+			// the report is set by now, output of the last command is no longer needed
+			taskToRemove.clearLastResult();
+			taskToRemove.markFinished();
+			metrics.record(taskToRemove);
+			
+			// update bottombar
+			int remaining = numberOfTasks.decrementAndGet();
+			devtool.setActivityIndicator(remaining);
+			
+			// update task indicators
+			adjustItemTaskCounter( taskToRemove.getDevSourceItem(), -1 );
+			adjustItemTaskCounter( taskToRemove.getDestinationDevice(), -1 );
+			
+			// continue with the graph
+			List<Task> dependents = taskToRemove.getDependents();
+			for (int i = 0; i < dependents.size(); i++) {
+				dispatchIfReady( dependents.get(i) );
+			}
+			
+			// a group reports once all its tasks are done
+			if ( taskToRemove.getGroup() != null ) {
+				taskToRemove.getGroup().taskFinished(taskToRemove);
+			}
+			
+			// let those waiting for the task know, this may add new tasks
+			taskToRemove.getFuture().complete(taskToRemove);
+			
+			if (remaining == 0) {
+				synchronized (idle) {
+					idle.notifyAll();
+				}
 			}
 		}
 	}
 	
 	/**
-	 * Returns a Task to be processed. The TaskHandler asks for a next task when done with one.
-	 * If no tasks are available it goes to sleep, only to be woken up by this TaskManager upon adding a new Task.
-	 * Method is synchronised to avoid concurrent modification of the tasks Vector.
-	 * @return Task instance which has not yet been completed and is not active yet.
+	 * Schedules the automatic cancellation of a task once its timeout has passed.
+	 *
+	 * @param task The task that has just started.
+	 * @return Handle to cancel the scheduled timeout when the task finishes in time, <code>null</code> if the task does not time out.
 	 */
-	public synchronized Task getNextTask() {
-		// if any tasks left
-		if ( !tasks.isEmpty() ) {
-			
-			// loop over tasks to find a suitable one
-			// that is an inactive, uncompleted task
-			for (int i = 0; i < tasks.size(); i++) {
-				
-				Task nextTask = (Task) tasks.firstElement();
-				
-				// when ok return
-				if ( !nextTask.isCompleted() && !nextTask.isActive() ) {
-					return nextTask;
+	ScheduledFuture<?> scheduleTimeout(final Task task) {
+		
+		long delay = task.getTimeout();
+		if (delay <= 0) {
+			return null;
+		}
+		
+		return timer.schedule(new Runnable() {
+			public void run() {
+				System.out.println("Task timed out: " + task.getName() );
+				task.timeOut();
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Starts another attempt of a task after a delay. During the delay the task does not occupy a worker
+	 * or hold up its lane; the attempt is queued at the end of its lane once the delay has passed.
+	 *
+	 * @param task A task that failed and is not active anymore.
+	 * @param delay Delay in milliseconds.
+	 */
+	void scheduleRetry(final Task task, long delay) {
+		
+		task.nextAttempt();
+		
+		try {
+			timer.schedule(new Runnable() {
+				public void run() {
+					getLane(task).submit( new TaskHandler(TaskManager.this, devtool.fileOperator, task), task.isBackground() );
 				}
+			}, delay, TimeUnit.MILLISECONDS);
+		}
+		catch (RejectedExecutionException ree) {
+			// shutting down, give up on the task
+			task.setCompleted(true);
+			removeTask(task);
+		}
+	}
+	
+	/**
+	 * Cancels all tasks related to an item, both projects and devices are supported by this method.
+	 *
+	 * @param item Project or device to cancel the tasks for.
+	 * @return Number of tasks that were cancelled.
+	 */
+	public int cancelTasksForItem(DevSourceItem item) {
+		
+		Object[] snapshot = tasks.toArray();
+		int cancelled = 0;
+		
+		for (int i = 0; i < snapshot.length; i++) {
+			Task task = (Task) snapshot[i];
+			// match -> testing for reference to same object
+			if ( task.getDevSourceItem() == item || task.getDestinationDevice() == item ) {
+				task.cancel();
+				cancelled++;
 			}
 		}
 		
-		// else it returns null
-		return null;
+		return cancelled;
+	}
+	
+	/**
+	 * Cancels all tasks that are not yet completed.
+	 */
+	public void cancelAllTasks() {
+		
+		Object[] snapshot = tasks.toArray();
+		for (int i = 0; i < snapshot.length; i++) {
+			((Task) snapshot[i]).cancel();
+		}
+	}
+	
+	/**
+	 * Informs the user of tasks that did not end normally, such as cancelled or timed out tasks.
+	 *
+	 * @param task A task that has just finished.
+	 */
+	void notifyTaskOutcome(Task task) {
+		
+		if ( task.isTimedOut() ) {
+			devtool.setActivityNotice(task.getName() + " timed out");
+		} else if ( task.isCancelled() ) {
+			devtool.setActivityNotice(task.getName() + " cancelled");
+		}
+	}
+	
+	/**
+	 * Stops accepting new tasks. Tasks that were already added are still processed.
+	 */
+	public void shutdown() {
+		workers.shutdown();
+		timer.shutdownNow();
+	}
+	
+	// Inner classes
+	
+	/**
+	 * Identifies tasks that would do exactly the same: same type, same project and device
+	 * (by reference), and equal arguments.
+	 */
+	private static class PendingKey {
+		
+		private final int type;
+		private final DevSourceItem item;
+		private final DevSourceItem device;
+		private final String[] arguments;
+		
+		PendingKey(Task task) {
+			this.type = task.getTaskType();
+			this.item = task.getDevSourceItem();
+			this.device = task.getDestinationDevice();
+			this.arguments = task.getArguments();
+		}
+		
+		public boolean equals(Object o) {
+			if ( !(o instanceof PendingKey) ) {
+				return false;
+			}
+			PendingKey other = (PendingKey) o;
+			return type == other.type
+				&& item == other.item
+				&& device == other.device
+				&& Arrays.equals(arguments, other.arguments);
+		}
+		
+		public int hashCode() {
+			int hash = type;
+			hash = 31 * hash + System.identityHashCode(item);
+			hash = 31 * hash + System.identityHashCode(device);
+			hash = 31 * hash + Arrays.hashCode(arguments);
+			return hash;
+		}
+	}
+	
+	/**
+	 * Creates named daemon threads for the worker pool, so workers never keep the JVM alive.
+	 */
+	private static class WorkerThreadFactory implements ThreadFactory {
+		
+		private final AtomicInteger count = new AtomicInteger(0);
+		private final String prefix;
+		
+		WorkerThreadFactory() {
+			this("TaskHandler-");
+		}
+		
+		WorkerThreadFactory(String prefix) {
+			this.prefix = prefix;
+		}
+		
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, prefix + count.incrementAndGet() );
+			t.setDaemon(true);
+			return t;
+		}
 	}
 }
\ No newline at end of file
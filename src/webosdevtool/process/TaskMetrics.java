@@ -0,0 +1,149 @@
+package webosdevtool.process;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * In-process registry of task metrics. The TaskManager records every task once it is finished.
+ * The registry keeps the most recent tasks for the timeline view, and totals per task type,
+ * so it is easy to see whether time goes to waiting, starting processes or running them.
+ */
+public class TaskMetrics {
+
+	// Variables
+
+	/**
+	 * Number of finished tasks that are kept for the timeline.
+	 */
+	public static final int HISTORY_SIZE = 200;
+
+	private LinkedList<Task> history;
+	private Map<String, Totals> totals;
+
+	// Constructor
+
+	public TaskMetrics () {
+		history = new LinkedList<Task>();
+		totals = new TreeMap<String, Totals>();
+	}
+
+	// Methods
+
+	/**
+	 * Records a finished task.
+	 * @param task A task that has finished, whether successful or not.
+	 */
+	synchronized void record(Task task) {
+
+		history.addLast(task);
+		if (history.size() > HISTORY_SIZE) {
+			history.removeFirst();
+		}
+
+		Totals t = totals.get( task.getName() );
+		if (t == null) {
+			t = new Totals();
+			totals.put(task.getName(), t);
+		}
+		t.add(task);
+	}
+
+	/**
+	 * @return Copy of the recently finished tasks, oldest first.
+	 */
+	public synchronized List<Task> getHistory() {
+		return new ArrayList<Task>(history);
+	}
+
+	/**
+	 * Removes all recorded metrics.
+	 */
+	public synchronized void clear() {
+		history.clear();
+		totals.clear();
+	}
+
+	/**
+	 * @return Table with totals per task type, as plain text.
+	 */
+	public synchronized String getSummary() {
+
+		StringBuilder sb = new StringBuilder();
+		sb.append( String.format("%-28s %5s %5s %9s %9s %9s %9s %9s %10s%n",
+			"Task", "count", "fail", "avg wait", "max wait", "avg run", "max run", "avg spawn", "output") );
+
+		for (Map.Entry<String, Totals> entry : totals.entrySet()) {
+			Totals t = entry.getValue();
+			sb.append( String.format("%-28s %5d %5d %9s %9s %9s %9s %9s %10s%n",
+				entry.getKey(), t.count, t.failed,
+				formatNanos(t.wait / t.count), formatNanos(t.maxWait),
+				formatNanos(t.run / t.count), formatNanos(t.maxRun),
+				(t.commands > 0) ? formatNanos(t.spawn / t.commands) : "-",
+				formatBytes(t.outputBytes) ) );
+		}
+
+		return sb.toString();
+	}
+
+	/**
+	 * @param nanos Duration in nanoseconds.
+	 * @return Duration in milliseconds or seconds, whichever reads best.
+	 */
+	public static String formatNanos(long nanos) {
+		long millis = nanos / 1000000L;
+		if (millis < 10000) {
+			return millis + " ms";
+		}
+		return String.format("%.1f s", nanos / 1e9);
+	}
+
+	/**
+	 * @param bytes Size in bytes.
+	 * @return Size in bytes or kilobytes, whichever reads best.
+	 */
+	public static String formatBytes(long bytes) {
+		if (bytes < 10240) {
+			return bytes + " B";
+		}
+		return (bytes / 1024) + " kB";
+	}
+
+	// Inner classes
+
+	/**
+	 * Totals for one type of task.
+	 */
+	private static class Totals {
+
+		int count;
+		int failed;
+		long wait;
+		long maxWait;
+		long run;
+		long maxRun;
+		int commands;
+		long spawn;
+		long outputBytes;
+
+		void add(Task task) {
+			count++;
+			if ( !task.isSuccessful() ) {
+				failed++;
+			}
+			wait += task.getWaitTime();
+			maxWait = Math.max(maxWait, task.getWaitTime());
+			run += task.getRunTime();
+			maxRun = Math.max(maxRun, task.getRunTime());
+			outputBytes += task.getOutputBytes();
+
+			List<CommandRecord> records = task.getCommandRecords();
+			for (int i = 0; i < records.size(); i++) {
+				commands++;
+				spawn += records.get(i).getSpawnTime();
+			}
+		}
+	}
+}
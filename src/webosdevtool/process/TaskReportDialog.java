@@ -22,19 +22,53 @@ public class TaskReportDialog {
 	public static void show (Task task) {
 		
 		// set title
-		final String title = "Devtool - " + task.getName();
+		String title = "Devtool - " + task.getName();
+		if ( task.isTimedOut() ) {
+			title += " (Timed Out)";
+		} else if ( task.isCancelled() ) {
+			title += " (Cancelled)";
+		}
 		
 		// get report to show
-		final String info = task.getReport();
+		String info = task.getReport();
 		
 		// decide on message type based on success
-		final int messageType;
+		int messageType;
 		if ( task.isSuccessful() ) {
 			messageType = JOptionPane.INFORMATION_MESSAGE;
+		} else if ( task.isCancelled() ) {
+			messageType = JOptionPane.WARNING_MESSAGE;
 		} else {
 			messageType = JOptionPane.ERROR_MESSAGE;
 		}
 		
+		showMessage(info, title, messageType);
+	}
+	
+	/**
+	 * Shows a single dialog with the results of all tasks in a group.
+	 *
+	 * @param group The group to show a dialog for.
+	 */
+	public static void show (TaskGroup group) {
+		
+		String title = "Devtool - " + group.getName();
+		
+		int messageType;
+		if ( group.isSuccessful() ) {
+			messageType = JOptionPane.INFORMATION_MESSAGE;
+		} else {
+			messageType = JOptionPane.ERROR_MESSAGE;
+		}
+		
+		showMessage(group.getReport(), title, messageType);
+	}
+	
+	/**
+	 * Shows a message dialog without blocking the caller.
+	 */
+	private static void showMessage (final String info, final String title, final int messageType) {
+		
 		// show message dialog
 		// done in separate thread to avoid execute not returning...
 	    new Thread (new Runnable () {
@@ -0,0 +1,379 @@
+package webosdevtool.process;
+
+import webosdevtool.AMenuItem;
+import webosdevtool.Devtool;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.Frame;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JComboBox;
+import javax.swing.JFrame;
+import javax.swing.JMenu;
+import javax.swing.JMenuBar;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JSplitPane;
+import javax.swing.JTextArea;
+import javax.swing.Timer;
+
+import com.explodingpixels.macwidgets.BottomBar;
+import com.explodingpixels.macwidgets.BottomBarSize;
+import com.explodingpixels.macwidgets.IAppWidgetFactory;
+import com.explodingpixels.widgets.WindowUtils;
+
+/**
+ * TaskTimelineFrame shows the tasks of the last few minutes on a timeline, one row per task.
+ * For each task the time it waited (light) and the time it ran (coloured by outcome) are drawn,
+ * with the command-line processes it started as darker segments; the part spent starting a process is
+ * marked separately. Hovering a row shows its numbers. Below the timeline a table lists totals per task type.
+ * <br />
+ * The view refreshes itself twice per second while it is open.
+ */
+public class TaskTimelineFrame extends JFrame {
+
+	// Variables
+
+	private static final String[] SPANS = {"Last 30 seconds", "Last 2 minutes", "Last 10 minutes"};
+	private static final long[] SPAN_NANOS = {30 * 1000000000L, 120 * 1000000000L, 600 * 1000000000L};
+
+	private static final int ROW_HEIGHT = 18;
+	private static final int LABEL_WIDTH = 230;
+
+	private static final Color WAIT_COLOR = new Color(210, 210, 210);
+	private static final Color ACTIVE_COLOR = new Color(90, 140, 220);
+	private static final Color SUCCESS_COLOR = new Color(100, 180, 100);
+	private static final Color FAILURE_COLOR = new Color(210, 90, 80);
+	private static final Color CANCELLED_COLOR = new Color(230, 170, 60);
+	private static final Color COMMAND_COLOR = new Color(0, 0, 0, 60);
+	private static final Color SPAWN_COLOR = new Color(0, 0, 0, 140);
+
+	protected Devtool devtool;
+	private TaskManager taskManager;
+
+	private TimelinePanel timelinePanel;
+	private JTextArea summaryArea;
+	private JComboBox spanCombo;
+	private BottomBar bottomBar;
+	private Timer refreshTimer;
+
+	private volatile long span;
+
+	// Constructor
+
+	/**
+	 * @param myParent Reference to Devtool main class.
+	 * @param myTaskManager TaskManager of which the tasks are shown.
+	 */
+	public TaskTimelineFrame (Devtool myParent, TaskManager myTaskManager) {
+
+		super("Task Timeline");
+
+		this.devtool = myParent;
+		this.taskManager = myTaskManager;
+		this.span = SPAN_NANOS[1];
+
+		setDefaultCloseOperation(DO_NOTHING_ON_CLOSE);
+		addWindowListener (new WindowAdapter () {
+			public void windowClosing (WindowEvent e) {
+				windowClose();
+			}
+		});
+		WindowUtils.createAndInstallRepaintWindowFocusListener(this);
+
+		// Menu bar
+		JMenuBar menuBar = new JMenuBar();
+		JMenu timelineMenu = new JMenu("Timeline");
+		// Timeline > Clear
+		AMenuItem timelineMenuClear = new AMenuItem("Clear Finished Tasks");
+		timelineMenuClear.addActionListener (new ActionListener () {
+			public void actionPerformed (ActionEvent e) {
+				taskManager.getMetrics().clear();
+				refresh();
+			}
+		});
+		timelineMenu.add(timelineMenuClear);
+		JMenu windowMenu = new JMenu("Window");
+		// Window > Minimize
+		AMenuItem windowMenuMinimize = new AMenuItem("Minimize", KeyEvent.VK_M);
+		windowMenuMinimize.addActionListener (new ActionListener () {
+			public void actionPerformed (ActionEvent e) {
+				windowMinimize();
+			}
+		});
+		windowMenu.add(windowMenuMinimize);
+		// Window > Close
+		AMenuItem windowMenuClose = new AMenuItem("Close", KeyEvent.VK_W);
+		windowMenuClose.addActionListener (new ActionListener () {
+			public void actionPerformed (ActionEvent e) {
+				windowClose();
+			}
+		});
+		windowMenu.add(windowMenuClose);
+		menuBar.add(timelineMenu);
+		menuBar.add(windowMenu);
+		setJMenuBar(menuBar);
+
+		// Timeline
+		timelinePanel = new TimelinePanel();
+		timelinePanel.setToolTipText(""); // enables tooltips
+		JScrollPane timelineScrollPane = new JScrollPane(timelinePanel);
+		IAppWidgetFactory.makeIAppScrollPane(timelineScrollPane);
+		timelineScrollPane.setPreferredSize(new Dimension(800, 300));
+
+		// Totals per task type
+		summaryArea = new JTextArea();
+		summaryArea.setFont(new Font("Menlo", Font.PLAIN, 11));
+		summaryArea.setEditable(false);
+		summaryArea.setBorder(BorderFactory.createEmptyBorder(5,5,5,5));
+		JScrollPane summaryScrollPane = new JScrollPane(summaryArea);
+		IAppWidgetFactory.makeIAppScrollPane(summaryScrollPane);
+		summaryScrollPane.setPreferredSize(new Dimension(800, 150));
+
+		JSplitPane splitPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT, timelineScrollPane, summaryScrollPane);
+		splitPane.setResizeWeight(0.7);
+
+		// Bottom bar
+		bottomBar = new BottomBar(BottomBarSize.LARGE);
+		bottomBar.installWindowDraggerOnWindow(this);
+		JButton closeButton = new JButton("Close");
+		closeButton.putClientProperty("JButton.buttonType", "textured");
+		closeButton.setToolTipText("Close this window (\u2318W)");
+		closeButton.addActionListener (new ActionListener () {
+			public void actionPerformed (ActionEvent e) {
+				windowClose();
+			}
+		});
+		bottomBar.addComponentToCenter(closeButton);
+		spanCombo = new JComboBox(SPANS);
+		spanCombo.setSelectedIndex(1);
+		spanCombo.addActionListener (new ActionListener () {
+			public void actionPerformed (ActionEvent e) {
+				span = SPAN_NANOS[ spanCombo.getSelectedIndex() ];
+				refresh();
+			}
+		});
+		bottomBar.addComponentToRight(spanCombo);
+
+		JPanel contentPanel = new JPanel(new BorderLayout());
+		contentPanel.add(splitPane, BorderLayout.CENTER);
+		contentPanel.add(bottomBar.getComponent(), BorderLayout.SOUTH);
+		setContentPane(contentPanel);
+
+		pack();
+		setLocation(50, 100);
+
+		// keep the view up to date while open
+		refreshTimer = new Timer(500, new ActionListener () {
+			public void actionPerformed (ActionEvent e) {
+				refresh();
+			}
+		});
+		refresh();
+		refreshTimer.start();
+
+		setVisible(true);
+	}
+
+	// Methods
+
+	/**
+	 * Updates the timeline and the totals with the latest task information.
+	 */
+	public void refresh() {
+
+		long now = System.nanoTime();
+		long start = now - span;
+
+		// running and waiting tasks first, then finished tasks, most recent first
+		List<Task> rows = new ArrayList<Task>();
+		List<Task> current = taskManager.getTasks();
+		for (int i = 0; i < current.size(); i++) {
+			if ( current.get(i).getEnqueuedAt() != 0 ) {
+				rows.add( current.get(i) );
+			}
+		}
+		List<Task> history = taskManager.getMetrics().getHistory();
+		for (int i = history.size() - 1; i >= 0; i--) {
+			Task t = history.get(i);
+			if ( t.getFinishedAt() - start >= 0 && !rows.contains(t) ) {
+				rows.add(t);
+			}
+		}
+
+		timelinePanel.setRows(rows, start, now);
+		summaryArea.setText( taskManager.getMetrics().getSummary() );
+	}
+
+	private void windowMinimize() {
+		if (getExtendedState() == Frame.ICONIFIED) {
+			setExtendedState(Frame.NORMAL);
+		} else {
+			setExtendedState(Frame.ICONIFIED);
+		}
+	}
+
+	private void windowClose() {
+		refreshTimer.stop();
+		devtool.disposeTaskTimelineWindow();
+		dispose();
+	}
+
+	/**
+	 * @return Short description of a task for its row label.
+	 */
+	private static String getLabel(Task t) {
+		String label = t.getName();
+		if ( t.getDestinationDevice() != null ) {
+			label += " (" + t.getDestinationDevice().getName() + ")";
+		} else if ( t.getDevSourceItem() != null ) {
+			label += " (" + t.getDevSourceItem().getName() + ")";
+		}
+		return label;
+	}
+
+	/**
+	 * @return Colour of the run bar, based on the state of a task.
+	 */
+	private static Color getRunColor(Task t) {
+		if ( !t.isCompleted() ) {
+			return ACTIVE_COLOR;
+		} else if ( t.isCancelled() ) {
+			return CANCELLED_COLOR;
+		} else if ( t.isSuccessful() ) {
+			return SUCCESS_COLOR;
+		}
+		return FAILURE_COLOR;
+	}
+
+	// Inner classes
+
+	/**
+	 * Panel that draws one bar per task along a time axis.
+	 */
+	private class TimelinePanel extends JPanel {
+
+		private List<Task> rows = new ArrayList<Task>();
+		private long start;
+		private long end;
+
+		TimelinePanel() {
+			setBackground(Color.WHITE);
+			setFont(new Font("Lucida Grande", Font.PLAIN, 11));
+		}
+
+		void setRows(List<Task> rows, long start, long end) {
+			this.rows = rows;
+			this.start = start;
+			this.end = end;
+			setPreferredSize( new Dimension(700, Math.max(ROW_HEIGHT, rows.size() * ROW_HEIGHT + ROW_HEIGHT)) );
+			revalidate();
+			repaint();
+		}
+
+		/**
+		 * @return Horizontal position for a moment in time, clipped to the visible span.
+		 */
+		private int toX(long time) {
+			int width = getWidth() - LABEL_WIDTH - 10;
+			long clipped = Math.max(0, Math.min(end - start, time - start));
+			return LABEL_WIDTH + (int) (clipped * width / (end - start));
+		}
+
+		protected void paintComponent(Graphics g) {
+			super.paintComponent(g);
+
+			Graphics2D g2 = (Graphics2D) g;
+			g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+			long now = end;
+
+			// time axis, one tick every tenth of the span
+			g2.setColor(Color.GRAY);
+			for (int i = 0; i <= 10; i++) {
+				long tick = start + (end - start) * i / 10;
+				int x = toX(tick);
+				g2.drawLine(x, 0, x, 4);
+				if (i < 10) {
+					g2.drawString("-" + TaskMetrics.formatNanos(end - tick), x + 2, 12);
+				}
+			}
+
+			for (int i = 0; i < rows.size(); i++) {
+				Task t = rows.get(i);
+				int y = ROW_HEIGHT * (i + 1);
+
+				// label
+				g2.setColor(Color.DARK_GRAY);
+				g2.drawString(getLabel(t), 5, y + ROW_HEIGHT - 5);
+
+				// waiting
+				long started = (t.getStartedAt() != 0) ? t.getStartedAt() : ((t.getFinishedAt() != 0) ? t.getFinishedAt() : now);
+				g2.setColor(WAIT_COLOR);
+				g2.fillRect(toX(t.getEnqueuedAt()), y + 4, Math.max(1, toX(started) - toX(t.getEnqueuedAt())), ROW_HEIGHT - 8);
+
+				// running
+				if (t.getStartedAt() != 0) {
+					long finished = (t.getFinishedAt() != 0) ? t.getFinishedAt() : now;
+					g2.setColor( getRunColor(t) );
+					g2.fillRect(toX(t.getStartedAt()), y + 2, Math.max(1, toX(finished) - toX(t.getStartedAt())), ROW_HEIGHT - 4);
+
+					// processes, with the part spent starting them
+					List<CommandRecord> records = t.getCommandRecords();
+					for (int j = 0; j < records.size(); j++) {
+						CommandRecord r = records.get(j);
+						g2.setColor(COMMAND_COLOR);
+						g2.fillRect(toX(r.getStartedAt()), y + 6, Math.max(1, toX(r.getFinishedAt()) - toX(r.getStartedAt())), ROW_HEIGHT - 12);
+						g2.setColor(SPAWN_COLOR);
+						g2.fillRect(toX(r.getStartedAt()), y + 6, Math.max(1, toX(r.getSpawnedAt()) - toX(r.getStartedAt())), ROW_HEIGHT - 12);
+					}
+				}
+			}
+		}
+
+		public String getToolTipText(MouseEvent e) {
+
+			int index = e.getY() / ROW_HEIGHT - 1;
+			List<Task> current = rows;
+			if (index < 0 || index >= current.size()) {
+				return null;
+			}
+			Task t = current.get(index);
+
+			StringBuilder tip = new StringBuilder("<html><b>").append( getLabel(t) ).append("</b><br>");
+			tip.append("Waited: ").append( TaskMetrics.formatNanos(t.getWaitTime()) )
+				.append(" behind ").append( t.getQueueDepth() ).append(" tasks<br>");
+			tip.append("Ran: ").append( TaskMetrics.formatNanos(t.getRunTime()) ).append("<br>");
+			List<CommandRecord> records = t.getCommandRecords();
+			for (int j = 0; j < records.size(); j++) {
+				CommandRecord r = records.get(j);
+				tip.append("&nbsp;&nbsp;").append( r.getName() )
+					.append(": start ").append( TaskMetrics.formatNanos(r.getSpawnTime()) )
+					.append(", run ").append( TaskMetrics.formatNanos(r.getRunTime()) )
+					.append(", exit ").append( r.getExitCode() )
+					.append(", ").append( TaskMetrics.formatBytes(r.getOutputBytes()) ).append("<br>");
+			}
+			if ( t.getExitCode() != null ) {
+				tip.append("Exit code: ").append( t.getExitCode() ).append("<br>");
+			}
+			tip.append("Output: ").append( TaskMetrics.formatBytes(t.getOutputBytes()) ).append("</html>");
+
+			return tip.toString();
+		}
+	}
+}
@@ -0,0 +1,273 @@
+package webosdevtool.process;
+
+import webosdevtool.DevtoolSettings;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * ToolResolver finds the SDK tools and applications that tasks run, so their locations are not
+ * hard-coded. The SDK is looked for, in order, at:
+ * <ul>
+ * <li>the <code>webosdevtool.sdk</code> system property,</li>
+ * <li>the <code>PALM_SDK</code> environment variable,</li>
+ * <li>the SDK location in the settings,</li>
+ * <li><code>/opt/PalmSDK/Current</code>,</li>
+ * <li>the folder above the first <code>palm-launch</code> found on the <code>PATH</code>.</li>
+ * </ul>
+ * Locations are resolved once and cached. A cached location is checked again (whether its file
+ * still exists and is unchanged) at most once per <code>REVALIDATE_INTERVAL</code>, so tasks do not
+ * probe the file system each time they run a tool.
+ * <br />
+ * A tool can be pointed at another executable with <code>setOverride()</code>, e.g. a local stand-in script.
+ * Tools that are not in the SDK, found on the <code>PATH</code> or overridden, are run directly rather than
+ * with the shell, so they must be executable.
+ */
+public class ToolResolver {
+
+	// Variables
+
+	public static final String DEFAULT_SDK_LOCATION = "/opt/PalmSDK/Current";
+
+	/**
+	 * Time in milliseconds during which a resolved location is used without checking it again.
+	 */
+	public static final long REVALIDATE_INTERVAL = 10000;
+
+	private static final String[] APPLICATION_FOLDERS = { "/Applications", System.getProperty("user.home") + "/Applications" };
+
+	private static volatile String sdkLocation = null;
+	private static final ConcurrentMap<String, Location> tools = new ConcurrentHashMap<String, Location>();
+	private static final ConcurrentMap<String, Location> applications = new ConcurrentHashMap<String, Location>();
+	private static final Map<String, String> overrides = new ConcurrentHashMap<String, String>();
+
+	// Constructor
+
+	private ToolResolver () {}
+
+	// Methods
+
+	/**
+	 * @return Folder of the SDK, found on first use.
+	 */
+	public static String getSDKLocation() {
+
+		String location = sdkLocation;
+		if (location == null) {
+			synchronized (ToolResolver.class) {
+				if (sdkLocation == null) {
+					sdkLocation = findSDKLocation();
+					System.out.println("Using the SDK at " + sdkLocation);
+				}
+				location = sdkLocation;
+			}
+		}
+		return location;
+	}
+
+	/**
+	 * Uses the SDK in the given folder from now on, instead of the one that was found.
+	 *
+	 * @param location Folder of the SDK, or <code>null</code> to look for it again.
+	 */
+	public static void setSDKLocation(String location) {
+		synchronized (ToolResolver.class) {
+			invalidate();
+			sdkLocation = location;
+		}
+	}
+
+	/**
+	 * @param tool Name of an SDK tool, e.g. <code>palm-install</code>.
+	 * @return Path of the tool. If it cannot be found, its expected path in the SDK is returned.
+	 */
+	public static String resolve(String tool) {
+
+		String override = overrides.get(tool);
+		if (override != null) {
+			return override;
+		}
+
+		Location location = tools.get(tool);
+		if ( location == null || !location.isValid() ) {
+			location = findTool(tool);
+			tools.put(tool, location);
+		}
+		return location.path;
+	}
+
+	/**
+	 * @param path Path of a tool, as returned by <code>resolve()</code>.
+	 * @return True if the tool is part of the SDK, and thus a shell script. Tools found elsewhere may be any kind of executable.
+	 */
+	public static boolean isInSDK(String path) {
+		return path.startsWith( getSDKLocation() + "/bin/" );
+	}
+	
+	/**
+	 * @param name Name of an application, e.g. <code>Safari</code>.
+	 * @return Path of the application bundle, or <code>null</code> if it is not installed.
+	 */
+	public static String findApplication(String name) {
+
+		Location location = applications.get(name);
+		if ( location == null || !location.isValid() ) {
+			location = new Location(null);
+			for (int i = 0; i < APPLICATION_FOLDERS.length; i++) {
+				File bundle = new File(APPLICATION_FOLDERS[i], name + ".app");
+				if ( bundle.exists() && bundle.canRead() ) {
+					location = new Location( bundle.getPath() );
+					break;
+				}
+			}
+			applications.put(name, location);
+		}
+		return location.exists ? location.path : null;
+	}
+
+	/**
+	 * Lets a tool run another executable, e.g. a stand-in script for testing without an SDK.
+	 *
+	 * @param tool Name of an SDK tool, e.g. <code>palm-install</code>.
+	 * @param path Path of the executable to use, or <code>null</code> to resolve the tool as usual again.
+	 */
+	public static void setOverride(String tool, String path) {
+		if (path == null) {
+			overrides.remove(tool);
+		} else {
+			overrides.put(tool, path);
+		}
+	}
+
+	/**
+	 * Forgets all resolved locations, including the SDK location, so they are looked up again on next use.
+	 */
+	public static void invalidate() {
+		synchronized (ToolResolver.class) {
+			sdkLocation = null;
+			tools.clear();
+			applications.clear();
+		}
+	}
+
+	/**
+	 * @return Folder of the SDK, following the order described above.
+	 */
+	private static String findSDKLocation() {
+
+		String location = System.getProperty("webosdevtool.sdk");
+		if ( isFolder(location) ) {
+			return location;
+		}
+		location = System.getenv("PALM_SDK");
+		if ( isFolder(location) ) {
+			return location;
+		}
+		try {
+			location = DevtoolSettings.getPropertySDKLocation();
+			if ( isFolder(location) ) {
+				return location;
+			}
+		}
+		catch (RuntimeException e) {
+			// unreadable settings do not matter here, there are other places to look
+		}
+		if ( isFolder(DEFAULT_SDK_LOCATION) ) {
+			return DEFAULT_SDK_LOCATION;
+		}
+
+		// <sdk>/bin/palm-launch
+		File launch = findOnPath("palm-launch");
+		if (launch != null && launch.getParentFile().getParentFile() != null) {
+			return launch.getParentFile().getParent();
+		}
+
+		// not found, commands will fail and tell so
+		return DEFAULT_SDK_LOCATION;
+	}
+
+	/**
+	 * @return Location of a tool in the SDK, or else on the <code>PATH</code>.
+	 */
+	private static Location findTool(String tool) {
+
+		File file = new File(getSDKLocation() + "/bin/" + tool);
+		if ( !file.isFile() ) {
+			File onPath = findOnPath(tool);
+			if (onPath != null) {
+				file = onPath;
+			}
+		}
+		return new Location( file.getPath() );
+	}
+
+	/**
+	 * @return The first file with the given name in the folders of the <code>PATH</code>, or <code>null</code>.
+	 */
+	private static File findOnPath(String name) {
+
+		String path = System.getenv("PATH");
+		if (path == null) {
+			return null;
+		}
+		String[] folders = path.split(File.pathSeparator);
+		for (int i = 0; i < folders.length; i++) {
+			if (folders[i].length() == 0) {
+				continue;
+			}
+			File file = new File(folders[i], name);
+			if ( file.isFile() ) {
+				return file;
+			}
+		}
+		return null;
+	}
+
+	private static boolean isFolder(String location) {
+		return location != null && location.length() > 0 && new File(location).isDirectory();
+	}
+
+	// Inner classes
+
+	/**
+	 * A resolved path together with what is needed to tell whether it is still valid.
+	 */
+	private static class Location {
+
+		private final String path;
+		private final boolean exists;
+		private final long lastModified;
+		private volatile long checkedAt;
+
+		Location (String path) {
+			File file = (path == null) ? null : new File(path);
+			this.path = path;
+			this.exists = file != null && file.exists();
+			this.lastModified = exists ? file.lastModified() : 0;
+			this.checkedAt = System.currentTimeMillis();
+		}
+
+		/**
+		 * @return True if the location can still be used. The file is only checked once the interval has passed.
+		 */
+		boolean isValid() {
+
+			long now = System.currentTimeMillis();
+			if (now - checkedAt < REVALIDATE_INTERVAL) {
+				return true;
+			}
+			// something missing may have been installed meanwhile
+			if (!exists) {
+				return false;
+			}
+			// the file was removed or replaced
+			if ( new File(path).lastModified() != lastModified ) {
+				return false;
+			}
+			checkedAt = now;
+			return true;
+		}
+	}
+}